@@ -0,0 +1,120 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.lib.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares the non-ASCII detection of StringHelpers to the implementation which copied every line into an int[]. The
+ * input is a playlist of 100k lines which is pure ASCII in the worst case, so every line has to be scanned completely.
+ * Run with "ant bench -Dbench.args=StringHelpersBenchmark".
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StringHelpersBenchmark
+{
+  @Param({"100000"})
+  public int lineCount;
+
+  @Param({"ascii", "lastLine"}) //Where the first non-ASCII digit is...
+  public String input;
+
+  private String[] lines;
+  private byte[] encoded;
+
+
+  @Setup(Level.Trial)
+  public void setup ()
+  {
+    lines = new String[lineCount];
+    StringBuilder file = new StringBuilder();
+    for(int i = 0; i < lineCount; i++)
+    {
+      lines[i] = "Music/Artist " + (i % 997) + "/Album " + (i % 31) + "/" + (i % 20 + 1) + " - Some Title " + i + ".mp3";
+      if(input.equals("lastLine") && i == lineCount - 1)
+        lines[i] += "é";
+      file.append(lines[i]).append("\r\n");
+    }
+    encoded = file.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The implementation before the char and byte based variants were added.
+   */
+  private static boolean legacyContainsNonASCII (String line)
+  {
+    int[] charArr = new int[line.length()];
+    for (int i = 0; i < line.length(); i++)
+      charArr[i] = line.codePointAt(i);
+    for(int c : charArr)
+    {
+      if((c>=1 && c<=9) || c==11 || c==12 || (c>=14 && c<=31) || c>=127)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean legacyPerLine ()
+  {
+    for(String line : lines)
+    {
+      if(legacyContainsNonASCII(line))
+        return true;
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean charsPerLine ()
+  {
+    for(String line : lines)
+    {
+      if(StringHelpers.containsNonASCII(line))
+        return true;
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean encodedBytes ()
+  {
+    return StringHelpers.containsNonASCII(encoded, 0, encoded.length);
+  }
+}
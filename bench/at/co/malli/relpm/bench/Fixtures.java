@@ -0,0 +1,173 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.bench;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+
+/**
+ * Generates the synthetic playlists and silent MP3 files the benchmarks run against. A fixture of n entries consists
+ * of n MP3 files spread over directories of 100 files and an M3U playlist referencing all of them with relative paths
+ * and #EXTINF lines. Only one MP3 file is really written, the others are hard links to it if the file system supports
+ * them, so even 100k entries need almost no disk space. Fixtures are kept in build/bench/fixtures and reused by later
+ * runs. Run main() to generate them up front.
+ * @author Dietmar Malli
+ */
+public class Fixtures
+{
+  public static final File BASE_DIRECTORY = new File(System.getProperty("relpm.bench.fixtures", "build/bench/fixtures"));
+  public static final String PLAYLIST_NAME = "playlist.m3u";
+  private static final int FILES_PER_DIRECTORY = 100;
+  private static final int FRAME_COUNT = 40;          //A bit more than one second...
+  private static final int FRAME_HEADER = 0xFFFB10C4; //MPEG-1 layer III, 32 kbit/s, 44.1 kHz, mono
+  private static final int FRAME_LENGTH = 104;
+
+  private Fixtures ()
+  {
+  }
+
+  /**
+   * Returns the playlist of a fixture and generates the fixture if it doesn't exist yet.
+   * @param entries The number of tracks in the playlist.
+   * @return The playlist file. The tracks are located relative to its directory.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static synchronized File playlist (int entries) throws IOException
+  {
+    File directory = new File(BASE_DIRECTORY, String.valueOf(entries)).getAbsoluteFile();
+    File playlist = new File(directory, PLAYLIST_NAME);
+    if(playlist.isFile()) //The playlist is written last, so the fixture is complete...
+      return playlist;
+
+    Path template = new File(directory, "silence.mp3").toPath();
+    Files.createDirectories(directory.toPath());
+    Files.write(template, silentMp3("Silence", "RelPM"));
+    File tmp = new File(directory, PLAYLIST_NAME + ".tmp");
+    try (BufferedWriter w = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))
+    {
+      w.append("#EXTM3U\r\n");
+      for(int i = 0; i < entries; i++)
+      {
+        String relative = relativePath(i);
+        Path track = directory.toPath().resolve(relative);
+        Files.createDirectories(track.getParent());
+        link(template, track);
+        w.append("#EXTINF:1,Artist " + (i / FILES_PER_DIRECTORY) + " - Title " + i + "\r\n");
+        w.append(relative + "\r\n\r\n");
+      }
+    }
+    Files.move(tmp.toPath(), playlist.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return playlist;
+  }
+
+  /**
+   * @param index The index of a track in a fixture.
+   * @return The path of the track relative to the playlist.
+   */
+  public static String relativePath (int index)
+  {
+    return String.format("Artist %04d/Track %06d.mp3", index / FILES_PER_DIRECTORY, index);
+  }
+
+  private static void link (Path template, Path track) throws IOException
+  {
+    if(Files.exists(track))
+      return;
+    try
+    {
+      Files.createLink(track, template);
+    }
+    catch (IOException | UnsupportedOperationException ex)
+    {
+      Files.copy(template, track); //No hard links here...
+    }
+  }
+
+  /**
+   * Creates an MP3 file consisting of an ID3v2.3 tag with a title and an artist and a bit more than one second of silent
+   * constant bitrate frames.
+   * @param title The title to tag.
+   * @param artist The artist to tag.
+   * @return The content of the file.
+   */
+  public static byte[] silentMp3 (String title, String artist)
+  {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    writeTextFrame(frames, "TIT2", title);
+    writeTextFrame(frames, "TPE1", artist);
+    int tagSize = frames.size();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write('I');
+    out.write('D');
+    out.write('3');
+    out.write(3); //Version 2.3.0
+    out.write(0);
+    out.write(0); //No flags
+    out.write((tagSize >>> 21) & 0x7F); //Syncsafe size...
+    out.write((tagSize >>> 14) & 0x7F);
+    out.write((tagSize >>> 7) & 0x7F);
+    out.write(tagSize & 0x7F);
+    out.write(frames.toByteArray(), 0, tagSize);
+    for(int i = 0; i < FRAME_COUNT; i++)
+    {
+      writeInt(out, FRAME_HEADER);
+      out.write(new byte[FRAME_LENGTH - 4], 0, FRAME_LENGTH - 4); //Zeroed side info and main data decode to silence...
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeTextFrame (ByteArrayOutputStream out, String id, String text)
+  {
+    byte[] content = text.getBytes(StandardCharsets.ISO_8859_1);
+    out.write(id.getBytes(StandardCharsets.ISO_8859_1), 0, 4);
+    writeInt(out, content.length + 1);
+    out.write(0);
+    out.write(0); //No flags
+    out.write(0); //ISO-8859-1
+    out.write(content, 0, content.length);
+  }
+
+  private static void writeInt (ByteArrayOutputStream out, int value)
+  {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  /**
+   * Generates the fixtures used by the benchmarks.
+   * @param args The numbers of entries. Defaults to 1000, 10000 and 100000.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static void main (String[] args) throws IOException
+  {
+    if(args.length == 0)
+      args = new String[] {"1000", "10000", "100000"};
+    for(String entries : args)
+      System.out.println(playlist(Integer.parseInt(entries)));
+  }
+}
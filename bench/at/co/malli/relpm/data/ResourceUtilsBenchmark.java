@@ -0,0 +1,82 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data;
+
+import at.co.malli.relpm.bench.Fixtures;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures ResourceUtils.getRelativePath() for the absolute paths of all tracks of a fixture. With base "playlist"
+ * the paths are relativized to the directory of the playlist, with "sibling" to a directory next to it, which needs
+ * a "../" step.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceUtilsBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  @Param({"playlist", "sibling"})
+  public String base;
+
+  private String basePath;
+  private String[] absolutePaths;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException
+  {
+    File directory = Fixtures.playlist(entries).getParentFile();
+    if(base.equals("playlist"))
+      basePath = directory.getAbsolutePath();
+    else
+      basePath = new File(directory.getParentFile(), "sibling").getAbsolutePath();
+    absolutePaths = new String[entries];
+    for(int i = 0; i < entries; i++)
+      absolutePaths[i] = new File(directory, Fixtures.relativePath(i)).getAbsolutePath();
+  }
+
+  @Benchmark
+  public void getRelativePath (Blackhole bh) throws Exception
+  {
+    for(String path : absolutePaths)
+      bh.consume(ResourceUtils.getRelativePath(path, basePath, "/"));
+  }
+}
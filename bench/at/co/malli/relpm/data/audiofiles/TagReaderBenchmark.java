@@ -0,0 +1,81 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import at.co.malli.relpm.bench.Fixtures;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures reading the tags of all silent MP3 files of a fixture, once with the MP3TagReader based on the javax.sound
+ * service providers and once with the ID3TagReader. The TagCache isn't involved. One invocation reads every file once,
+ * so single shots are measured.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagReaderBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  private File[] files;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException
+  {
+    File directory = Fixtures.playlist(entries).getParentFile();
+    files = new File[entries];
+    for(int i = 0; i < entries; i++)
+      files[i] = new File(directory, Fixtures.relativePath(i));
+  }
+
+  @Benchmark
+  public void mp3TagReader (Blackhole bh) throws Exception
+  {
+    for(File file : files)
+      bh.consume(new MP3TagReader(file).getLengthSeconds());
+  }
+
+  @Benchmark
+  public void id3TagReader (Blackhole bh) throws Exception
+  {
+    for(File file : files)
+      bh.consume(new ID3TagReader(file).getLengthSeconds());
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import at.co.malli.lib.data.DirectoryListingCache;
+import at.co.malli.relpm.bench.Fixtures;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures the construction of TrackFile objects for the relative paths of a synthetic playlist. This covers the file
+ * lookups and the relative path calculation done in the constructor. NONE checks every file with a stat call, COLD
+ * lists the directories through a DirectoryListingCache which is cleared before every invocation and WARM reuses the
+ * listings of the previous invocations.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackFileBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  @Param({"NONE", "COLD", "WARM"})
+  public String cache;
+
+  private File playlist;
+  private String[] relativePaths;
+  private String[] absolutePaths;
+  private DirectoryListingCache listing;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException
+  {
+    playlist = Fixtures.playlist(entries);
+    relativePaths = new String[entries];
+    absolutePaths = new String[entries];
+    for(int i = 0; i < entries; i++)
+    {
+      relativePaths[i] = Fixtures.relativePath(i);
+      absolutePaths[i] = new File(playlist.getParentFile(), relativePaths[i]).getAbsolutePath();
+    }
+    listing = (cache.equals("NONE") ? null : DirectoryListingCache.getInstance());
+  }
+
+  @Setup(Level.Invocation) //An invocation takes milliseconds, so the overhead of this level doesn't matter...
+  public void clearCache ()
+  {
+    if(cache.equals("COLD"))
+      listing.clear();
+  }
+
+  @Benchmark
+  public void fromRelativePath (Blackhole bh) throws Exception
+  {
+    for(String path : relativePaths)
+      bh.consume(new TrackFile(playlist, path, listing));
+  }
+
+  @Benchmark
+  public void fromAbsolutePath (Blackhole bh) throws Exception
+  {
+    for(String path : absolutePaths)
+      bh.consume(new TrackFile(playlist, path, listing));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.bench.Fixtures;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares the ways a parsed synthetic playlist can be written into a FileChannel by a PlaylistChannelWriter. "M3U"
+ * calls M3ULineWriter directly, so every line is formatted and encoded through the writer's buffer. "CACHED" goes
+ * through PlaylistChannelWriter.writeTrackFile(), which reuses the encoded lines stored in the tracks by the previous
+ * invocation, just like repeated saves of an unchanged list. "GATHERING" uses GatheringM3ULineWriter. The file is
+ * written into the page cache only, nothing is forced onto the disk.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GatheringM3ULineWriterBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  @Param({"M3U", "CACHED", "GATHERING"})
+  public String writer;
+
+  private File playlist;
+  private File output;
+  private ArrayList<TrackFile> tracks;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws Exception
+  {
+    playlist = Fixtures.playlist(entries);
+    List<String> lines = Files.readAllLines(playlist.toPath(), StandardCharsets.UTF_8);
+    M3ULineParser parser = new M3ULineParser(playlist);
+    for(String line : lines)
+      parser.addLine(line);
+    tracks = parser.getTracks();
+    output = new File(playlist.getParentFile(), "benchmark-output.m3u");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown ()
+  {
+    output.delete();
+  }
+
+  @Benchmark
+  public long write () throws Exception
+  {
+    PlaylistLineWriter lineWriter = (writer.equals("GATHERING") ? new GatheringM3ULineWriter() : new M3ULineWriter());
+    boolean cached = writer.equals("CACHED");
+    try (PlaylistChannelWriter w = new PlaylistChannelWriter(FileChannel.open(output.toPath(),
+                                   StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8))
+    {
+      lineWriter.writeIntro(w, output, "UTF-8");
+      for(TrackFile track : tracks)
+      {
+        if(cached)
+          w.writeTrackFile(lineWriter, output, track);
+        else
+          lineWriter.writeTrackFile(w, output, track);
+      }
+      lineWriter.writeOutro(w, output, "UTF-8");
+      w.finish();
+      return w.position();
+    }
+  }
+}
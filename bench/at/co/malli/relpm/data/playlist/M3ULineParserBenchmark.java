@@ -0,0 +1,90 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.lib.data.DirectoryListingCache;
+import at.co.malli.relpm.bench.Fixtures;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures M3ULineParser.addLine() for every line of a synthetic playlist. The #EXTINF lines are parsed, so the time
+ * is spent on resolving the paths and not on reading tags. The parser checks the files through the process-wide
+ * DirectoryListingCache: COLD clears it before every invocation, so the directories are listed again like on the
+ * first open of a playlist, WARM keeps it like on opening the same playlist again.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class M3ULineParserBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  @Param({"COLD", "WARM"})
+  public String cache;
+
+  private File playlist;
+  private String[] lines;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException
+  {
+    playlist = Fixtures.playlist(entries);
+    List<String> read = Files.readAllLines(playlist.toPath(), StandardCharsets.UTF_8);
+    lines = read.toArray(new String[read.size()]);
+  }
+
+  @Setup(Level.Invocation) //An invocation takes milliseconds, so the overhead of this level doesn't matter...
+  public void clearCache ()
+  {
+    if(cache.equals("COLD"))
+      DirectoryListingCache.getInstance().clear();
+  }
+
+  @Benchmark
+  public int addLine () throws Exception
+  {
+    M3ULineParser parser = new M3ULineParser(playlist);
+    for(String line : lines)
+      parser.addLine(line);
+    return parser.getTracks().size();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.bench.Fixtures;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures M3ULineWriter.writeTrackFile() for all tracks of a parsed synthetic playlist. The output is discarded, so
+ * only formatting and path relativization are measured. With target "same" the playlist is saved where it was read
+ * from, with "other" it is saved into the parent directory and every path has to be relativized again.
+ * @author Dietmar Malli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class M3ULineWriterBenchmark
+{
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  @Param({"same", "other"})
+  public String target;
+
+  private File playlist;
+  private ArrayList<TrackFile> tracks;
+
+
+  @Setup(Level.Trial)
+  public void setup () throws Exception
+  {
+    File parsed = Fixtures.playlist(entries);
+    List<String> lines = Files.readAllLines(parsed.toPath(), StandardCharsets.UTF_8);
+    M3ULineParser parser = new M3ULineParser(parsed);
+    for(String line : lines)
+      parser.addLine(line);
+    tracks = parser.getTracks();
+    if(target.equals("same"))
+      playlist = parsed;
+    else
+      playlist = new File(parsed.getParentFile().getParentFile(), "other.m3u");
+  }
+
+  @Benchmark
+  public void writeTrackFile () throws Exception
+  {
+    M3ULineWriter lineWriter = new M3ULineWriter();
+    try (BufferedWriter w = new BufferedWriter(new NullWriter()))
+    {
+      lineWriter.writeIntro(w, playlist, "DEFAULT");
+      for(TrackFile track : tracks)
+        lineWriter.writeTrackFile(w, playlist, track);
+      lineWriter.writeOutro(w, playlist, "DEFAULT");
+    }
+  }
+}
@@ -0,0 +1,460 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.lib.data;
+
+import at.co.malli.relpm.data.SettingsProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A small class implementing the singleton design pattern which answers File.isFile() questions from directory
+ * listings. The first question for a directory lists the whole directory once and all following questions for files
+ * in it are answered from memory, no matter whether they come from parsing a playlist, inserting songs or dropping
+ * files onto the list. The directory is read with Files.walkFileTree() limited to depth 1, which delivers the
+ * attributes together with the names where the file system supports it (for example on Windows shares). A playlist of
+ * 10k tracks in 500 album folders therefore needs 500 directory reads instead of up to 20k single stat calls.
+ * Every listed directory is registered with a WatchService and its listing is dropped as soon as something in it
+ * changes. Directories which can't be watched are listed again after UNWATCHED_LIFETIME. As the WatchService doesn't
+ * see changes made by other machines on network shares, the modification time of a watched directory is compared
+ * every WATCHED_CHECK_INTERVAL as well, and its listing is read again after WATCHED_LIFETIME in any case, which also
+ * catches files changed in place. The number of kept listings
+ * is limited by data.import.listingCacheDirectories, the least recently used one is dropped first.
+ * A name which isn't found in the listing is checked with File.isFile() as before, so differences in the case of the
+ * name or symbolic links never make a file disappear.
+ * @author Dietmar Malli
+ */
+public class DirectoryListingCache
+{
+  private static final Logger logger = LogManager.getLogger(DirectoryListingCache.class.getName());
+  
+  //Volatile to prevent VM from optimizing the Double-Checking of theInstance
+  private static volatile DirectoryListingCache theInstance=null;
+  /**
+   * @return The only existing instance of this class.
+   */
+  public static DirectoryListingCache getInstance()
+  {
+    if(theInstance==null)
+    {
+      synchronized (DirectoryListingCache.class)
+      {
+        if (theInstance==null)
+          theInstance = new DirectoryListingCache(
+                                   SettingsProvider.getInstance().getInt("data.import.listingCacheDirectories"));
+      }
+    }
+
+    return theInstance;
+  }
+  
+  public static final long UNWATCHED_LIFETIME = 30000; //ms
+  public static final long WATCHED_LIFETIME = 300000; //ms
+  public static final long WATCHED_CHECK_INTERVAL = 5000; //ms
+  
+  private final LinkedHashMap<File, Listing> listings;
+  private final HashMap<WatchKey, File> watched = new HashMap<>();
+  private final ConcurrentHashMap<File, FutureTask<Listing>> listingsInFlight = new ConcurrentHashMap<>();
+  private final WatchService watchService;
+  private final AtomicInteger listedDirectories = new AtomicInteger();
+  private final AtomicInteger fallbacks = new AtomicInteger();
+
+
+  /**
+   * Sets up the object and starts the thread which waits for changes in the listed directories. This is only called
+   * one time when getInstance() is called the first time.
+   * @param maxDirectories The maximum number of directory listings kept in memory.
+   */
+  private DirectoryListingCache (final int maxDirectories)
+  {
+    this.listings = new LinkedHashMap<File, Listing>(16, 0.75f, true) //Access order for LRU...
+    {
+      @Override
+      protected boolean removeEldestEntry (Map.Entry<File, Listing> eldest)
+      {
+        if(size() <= maxDirectories)
+          return false;
+        unwatch(eldest.getValue());
+        return true;
+      }
+    };
+    
+    WatchService service = null;
+    try
+    {
+      service = FileSystems.getDefault().newWatchService();
+    }
+    catch (IOException | UnsupportedOperationException ex)
+    {
+      logger.warn("No WatchService available. Directory listings are kept for " + UNWATCHED_LIFETIME + "ms only.");
+    }
+    this.watchService = service;
+    if(watchService != null)
+    {
+      Thread watcher = new Thread(new Runnable()
+      {
+        @Override
+        public void run ()
+        {
+          watchChanges();
+        }
+      }, "DirectoryListingCache-Watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    }
+  }
+
+  /**
+   * Checks whether a file exists and is a regular file.
+   * @param file The file to check.
+   * @return The same as file.isFile().
+   */
+  public boolean isFile (File file)
+  {
+    File absolute = file.getAbsoluteFile();
+    Listing listing = getListing(absolute);
+    if(listing != null && listing.missing)
+      return false; //Not even the directory exists... This is the case for relative paths tried as absolute ones.
+    if(listing != null && listing.entries != null && listing.entries.containsKey(absolute.getName()))
+      return true;
+    fallbacks.incrementAndGet();
+    return file.isFile();
+  }
+  
+  /**
+   * @param file A file.
+   * @return The size and modification time of the file as read with the listing of its directory or null if the file
+   *         isn't a regular file in the listing. Use isFile() to be sure that the file doesn't exist. A file changed in
+   *         place on a network share keeps its old values for up to WATCHED_LIFETIME, so they mustn't be used to
+   *         decide whether the content of a file changed.
+   */
+  public Entry getEntry (File file)
+  {
+    File absolute = file.getAbsoluteFile();
+    Listing listing = getListing(absolute);
+    if(listing == null || listing.entries == null)
+      return null;
+    return listing.entries.get(absolute.getName());
+  }
+  
+  /**
+   * Returns the listing of the parent directory of a file and lists the directory if necessary. Listing happens
+   * outside of the lock, so different directories are read at the same time. A directory which is already being
+   * listed by another thread is waited for instead of being listed twice.
+   * @param absolute An absolute file.
+   * @return The listing of the parent directory of the file or null if the file has no parent.
+   */
+  private Listing getListing (File absolute)
+  {
+    final File directory = absolute.getParentFile();
+    if(directory == null)
+      return null;
+    synchronized(this)
+    {
+      Listing listing = listings.get(directory);
+      if(listing != null && listing.isValid(directory, System.currentTimeMillis()))
+        return listing;
+      if(listing != null)
+      {
+        listings.remove(directory);
+        unwatch(listing); //Registered again by list()...
+      }
+    }
+    FutureTask<Listing> task = new FutureTask<>(new Callable<Listing>()
+    {
+      @Override
+      public Listing call ()
+      {
+        return list(directory);
+      }
+    });
+    FutureTask<Listing> running = listingsInFlight.putIfAbsent(directory, task);
+    if(running != null)
+      return await(running);
+    try
+    {
+      task.run();
+      Listing listing = await(task);
+      synchronized(this)
+      {
+        if(listing != null && (listing.key == null || watched.containsKey(listing.key)))
+          listings.put(directory, listing); //Not kept if the directory changed while it was read...
+      }
+      return listing;
+    }
+    finally
+    {
+      listingsInFlight.remove(directory, task);
+    }
+  }
+  
+  /**
+   * @param task A running or finished listing.
+   * @return The listing or null if listing failed or the thread was interrupted. The caller falls back to
+   *         File.isFile() then.
+   */
+  private Listing await (FutureTask<Listing> task)
+  {
+    try
+    {
+      return task.get();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    catch (ExecutionException ex)
+    {
+      logger.debug("Could not list a directory: " + ex.getCause());
+      return null;
+    }
+  }
+  
+  /**
+   * Reads the regular files of a directory with their attributes. The directory is registered with the WatchService
+   * before it is read, so no change can get lost in between.
+   * @param directory The directory to read.
+   * @return The listing. Its entries are null if the directory can't be read.
+   */
+  private Listing list (File directory)
+  {
+    final Path start = directory.toPath();
+    WatchKey key = watch(start);
+    long directoryModified = directory.lastModified(); //Before reading, so a change while reading isn't missed...
+    final HashMap<String, Entry> entries = new HashMap<>();
+    final boolean[] missing = new boolean[1];
+    try
+    {
+      Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>()
+      {
+        @Override
+        public FileVisitResult visitFile (Path file, BasicFileAttributes attrs)
+        {
+          if(attrs.isRegularFile()) //Links and directories are left to the fallback...
+            entries.put(file.getFileName().toString(), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis()));
+          return FileVisitResult.CONTINUE;
+        }
+        
+        @Override
+        public FileVisitResult visitFileFailed (Path file, IOException exc)
+        {
+          if(file.equals(start) && exc instanceof NoSuchFileException)
+            missing[0] = true;
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException ex)
+    {
+      logger.debug("Could not list " + directory + ": " + ex.getMessage());
+      return new Listing(null, false, key, directoryModified);
+    }
+    if(missing[0])
+      return new Listing(null, true, key, directoryModified);
+    listedDirectories.incrementAndGet();
+    return new Listing(entries, false, key, directoryModified);
+  }
+  
+  /**
+   * @param directory The directory to watch.
+   * @return The key of the registration or null if the directory can't be watched.
+   */
+  private WatchKey watch (Path directory)
+  {
+    if(watchService == null)
+      return null;
+    synchronized(this) //The watcher thread mustn't see the key before it is known...
+    {
+      try
+      {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watched.put(key, directory.toFile());
+        return key;
+      }
+      catch (IOException | UnsupportedOperationException | ClosedWatchServiceException ex)
+      {
+        return null; //Doesn't exist or can't be watched... The listing will expire.
+      }
+    }
+  }
+  
+  private void unwatch (Listing listing)
+  {
+    if(listing.key != null)
+    {
+      watched.remove(listing.key);
+      listing.key.cancel();
+    }
+  }
+  
+  /**
+   * Runs in the watcher thread and drops the listing of every directory in which something changed.
+   */
+  private void watchChanges ()
+  {
+    try
+    {
+      while(true)
+      {
+        WatchKey key = watchService.take();
+        key.pollEvents();
+        synchronized(this)
+        {
+          File directory = watched.remove(key);
+          if(directory != null)
+          {
+            Listing listing = listings.get(directory);
+            if(listing != null && listing.key == key)
+              listings.remove(directory);
+          }
+          key.cancel(); //The next listing registers the directory again...
+        }
+      }
+    }
+    catch (InterruptedException | ClosedWatchServiceException ex)
+    {
+      logger.trace("DirectoryListingCache watcher stopped");
+    }
+  }
+  
+  /**
+   * Drops all listings.
+   */
+  public synchronized void clear ()
+  {
+    for(Listing listing : listings.values())
+      unwatch(listing);
+    listings.clear();
+  }
+  
+  /**
+   * @return The number of directories which were listed so far.
+   */
+  public int getListedDirectories ()
+  {
+    return listedDirectories.get();
+  }
+  
+  /**
+   * @return The number of questions which had to be answered by File.isFile().
+   */
+  public int getFallbacks ()
+  {
+    return fallbacks.get();
+  }
+  
+  
+  /**
+   * The content of one directory.
+   */
+  private static class Listing
+  {
+    private final Map<String, Entry> entries; //null if the directory couldn't be read...
+    private final boolean missing;
+    private final WatchKey key;
+    private final long directoryModified;
+    private final long created;
+    private long checked; //Only used while holding the lock of the cache...
+    
+    private Listing (Map<String, Entry> entries, boolean missing, WatchKey key, long directoryModified)
+    {
+      this.entries = entries;
+      this.missing = missing;
+      this.key = key;
+      this.directoryModified = directoryModified;
+      this.created = System.currentTimeMillis();
+      this.checked = this.created;
+    }
+    
+    /**
+     * @param directory The directory of this listing.
+     * @param now The current time.
+     * @return False if the directory must be listed again.
+     */
+    private boolean isValid (File directory, long now)
+    {
+      if(key == null)
+        return now < created + UNWATCHED_LIFETIME;
+      if(now >= created + WATCHED_LIFETIME)
+        return false;
+      if(now >= checked + WATCHED_CHECK_INTERVAL)
+      {
+        if(directory.lastModified() != directoryModified) //Files were added, removed or renamed...
+          return false;
+        checked = now;
+      }
+      return true;
+    }
+  }
+  
+  /**
+   * The attributes of a regular file as read with the listing of its directory.
+   */
+  public static class Entry
+  {
+    private final long size;
+    private final long lastModified;
+    
+    private Entry (long size, long lastModified)
+    {
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+    
+    /**
+     * @return The size of the file in bytes.
+     */
+    public long getSize ()
+    {
+      return size;
+    }
+    
+    /**
+     * @return The modification time in milliseconds since the epoch like File.lastModified().
+     */
+    public long getLastModified ()
+    {
+      return lastModified;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.lib.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Guesses the character encoding of a text file from its first bytes. A byte order mark wins. Otherwise the prefix is
+ * validated as UTF-8, which is also true for pure ASCII files.
+ * @author Dietmar Malli
+ */
+public class EncodingDetector
+{
+  public static final int PREFIX_LENGTH = 64 * 1024;
+
+  private final Charset charset;
+  private final int bomLength;
+
+
+  private EncodingDetector (Charset charset, int bomLength)
+  {
+    this.charset = charset;
+    this.bomLength = bomLength;
+  }
+
+  /**
+   * Reads the first PREFIX_LENGTH bytes of a file and guesses its encoding.
+   * @param file The file to examine.
+   * @return An instance holding the result.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static EncodingDetector detect (File file) throws IOException
+  {
+    byte[] prefix = new byte[PREFIX_LENGTH];
+    int length = 0;
+    try (InputStream in = new FileInputStream(file))
+    {
+      int read;
+      while(length < prefix.length && (read = in.read(prefix, length, prefix.length - length)) > 0)
+        length += read;
+    }
+    return detect(prefix, length, length < prefix.length);
+  }
+
+  /**
+   * Guesses the encoding of the given bytes.
+   * @param prefix The first bytes of the text.
+   * @param length The number of valid bytes in prefix.
+   * @param complete True if prefix contains the whole text. Otherwise a multi-byte sequence cut off at the end of the
+   *                 prefix is not treated as an error.
+   * @return An instance holding the result.
+   */
+  public static EncodingDetector detect (byte[] prefix, int length, boolean complete)
+  {
+    if(startsWith(prefix, length, 0xEF, 0xBB, 0xBF))
+      return new EncodingDetector(StandardCharsets.UTF_8, 3);
+    if(startsWith(prefix, length, 0xFE, 0xFF))
+      return new EncodingDetector(StandardCharsets.UTF_16BE, 2);
+    if(startsWith(prefix, length, 0xFF, 0xFE))
+      return new EncodingDetector(StandardCharsets.UTF_16LE, 2);
+    if(!StringHelpers.containsNonASCII(prefix, 0, length) || isValidUTF8(prefix, length, complete)) //ASCII is UTF-8...
+      return new EncodingDetector(StandardCharsets.UTF_8, 0);
+    return new EncodingDetector(null, 0);
+  }
+
+  /**
+   * Validates UTF-8 including overlong forms, surrogates and code points above U+10FFFF.
+   */
+  private static boolean isValidUTF8 (byte[] b, int length, boolean complete)
+  {
+    int i = 0;
+    while(i < length)
+    {
+      int c = b[i] & 0xFF;
+      int following;
+      int min;
+      if(c < 0x80)
+      {
+        i++;
+        continue;
+      }
+      else if(c >= 0xC2 && c <= 0xDF)
+      {
+        following = 1;
+        min = 0x80;
+      }
+      else if(c >= 0xE0 && c <= 0xEF)
+      {
+        following = 2;
+        min = 0x800;
+      }
+      else if(c >= 0xF0 && c <= 0xF4)
+      {
+        following = 3;
+        min = 0x10000;
+      }
+      else
+        return false;
+      if(i + following >= length)
+        return !complete; //Cut off by the end of the prefix...
+      int codePoint = c & (0x3F >> following);
+      for(int j = 1; j <= following; j++)
+      {
+        int cont = b[i + j] & 0xFF;
+        if((cont & 0xC0) != 0x80)
+          return false;
+        codePoint = (codePoint << 6) | (cont & 0x3F);
+      }
+      if(codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF))
+        return false;
+      i += following + 1;
+    }
+    return true;
+  }
+
+  private static boolean startsWith (byte[] b, int length, int... bom)
+  {
+    if(length < bom.length)
+      return false;
+    for(int i = 0; i < bom.length; i++)
+    {
+      if((b[i] & 0xFF) != bom[i])
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return The detected charset or null if there was no byte order mark and the prefix isn't valid UTF-8. The caller
+   *         has to choose a fallback in this case.
+   */
+  public Charset getCharset ()
+  {
+    return charset;
+  }
+
+  /**
+   * @return The number of bytes of the byte order mark which have to be skipped before decoding or 0.
+   */
+  public int getBomLength ()
+  {
+    return bomLength;
+  }
+}
@@ -17,8 +17,12 @@
  */
 package at.co.malli.lib.data;
 
+import at.co.malli.relpm.data.RelativePathResolver;
 import at.co.malli.relpm.data.ResourceUtils;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 /**
@@ -42,16 +46,36 @@ public class FileHelpers
    * This function is trying to calculate the relative path of a file.
    * @param playlistDirectory The directory of the playlist to which the path should be relative.
    * @param track An instance containing the valid absolute path which should be converted to a relative path.
-   * @return The relative path using an external class.
+   * @return The relative path using a RelativePathResolver. Use one instance of it directly if many paths have to be
+   *         relativized to the same directory.
    * @throws at.co.malli.relpm.data.ResourceUtils.PathResolutionException if the path can't be relativized. This can
    *         for instance happen if the user supplies a file on D:\ for a playlist on C:\.
    */
   public static String calculateRelativePath (File playlistDirectory, File track) throws ResourceUtils.PathResolutionException
   {
-    String list = playlistDirectory.getAbsolutePath();
-    String absolute = track.getAbsolutePath();
-    String relative;
-    relative = ResourceUtils.getRelativePath(absolute, list, "/");
-    return relative;
+    return new RelativePathResolver(playlistDirectory).relativize(track);
+  }
+  
+  /**
+   * Reads from a FileChannel at the given position until the buffer is full or the end of the file is reached. The
+   * position of the channel itself isn't changed, so several threads can share one channel.
+   * @param channel The channel to read from.
+   * @param buffer The buffer to fill. It is flipped before this method returns.
+   * @param position The position in the file at which reading starts.
+   * @return The number of bytes read. This is less than the remaining space in the buffer only at the end of the file.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static int readFully (FileChannel channel, ByteBuffer buffer, long position) throws IOException
+  {
+    int total = 0;
+    while(buffer.hasRemaining())
+    {
+      int read = channel.read(buffer, position + total);
+      if(read < 0)
+        break;
+      total += read;
+    }
+    buffer.flip();
+    return total;
   }
 }
@@ -0,0 +1,206 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.lib.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * The regular files of a folder tree indexed by their names. The tree is read once, every directory by its own task in
+ * a ForkJoinPool, so a slow network drive is listed by several threads at the same time. Symbolic links aren't
+ * followed.
+ * @author Dietmar Malli
+ */
+public class FolderIndex
+{
+  private static final Logger logger = LogManager.getLogger(FolderIndex.class.getName());
+  
+  private final ConcurrentHashMap<String, List<Entry>> files = new ConcurrentHashMap<>();
+  private final Set<String> names;
+  private final AtomicInteger directories = new AtomicInteger(0);
+
+  private FolderIndex (Set<String> names)
+  {
+    this.names = names;
+  }
+
+  /**
+   * Reads a folder tree.
+   * @param root The folder to read.
+   * @param names The file names which should be indexed or null to index every file.
+   * @param threads The number of directories which are read at the same time.
+   * @return The index.
+   */
+  public static FolderIndex scan (File root, Set<String> names, int threads)
+  {
+    FolderIndex index = new FolderIndex(names);
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+    try
+    {
+      pool.invoke(index.new ScanTask(root.toPath()));
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+    logger.trace("Indexed " + index.files.size() + " names in " + index.directories.get() + " directories of " + root);
+    return index;
+  }
+
+  /**
+   * @param name The name of a file without its directory.
+   * @return The files with this name sorted by their path. The list is empty if there is none.
+   */
+  public List<Entry> get (String name)
+  {
+    List<Entry> found = files.get(name);
+    if(found == null)
+      return Collections.emptyList();
+    ArrayList<Entry> sorted;
+    synchronized(found)
+    {
+      sorted = new ArrayList<>(found);
+    }
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * @return The number of directories which were read.
+   */
+  public int getScannedDirectories ()
+  {
+    return directories.get();
+  }
+
+  private void add (String name, Entry entry)
+  {
+    List<Entry> found = files.get(name);
+    if(found == null)
+    {
+      List<Entry> created = Collections.synchronizedList(new ArrayList<Entry>(1));
+      found = files.putIfAbsent(name, created);
+      if(found == null)
+        found = created;
+    }
+    found.add(entry);
+  }
+
+  /**
+   * Reads one directory and forks a task for each of its subdirectories.
+   */
+  private class ScanTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+
+    private ScanTask (Path directory)
+    {
+      this.directory = directory;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      ArrayList<ScanTask> subtasks = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+      {
+        for(Path path : stream)
+        {
+          BasicFileAttributes attrs;
+          try
+          {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          }
+          catch (IOException ex)
+          {
+            continue; //Vanished meanwhile...
+          }
+          if(attrs.isDirectory())
+            subtasks.add(new ScanTask(path));
+          else if(attrs.isRegularFile())
+          {
+            String name = path.getFileName().toString();
+            if(names == null || names.contains(name))
+              add(name, new Entry(path.toFile(), attrs.size()));
+          }
+        }
+        directories.incrementAndGet();
+      }
+      catch (IOException ex)
+      {
+        logger.debug("Could not list " + directory + ": " + ex.getMessage());
+      }
+      invokeAll(subtasks);
+    }
+  }
+
+  /**
+   * A file found in the tree.
+   */
+  public static class Entry implements Comparable<Entry>
+  {
+    private final File file;
+    private final long size;
+
+    private Entry (File file, long size)
+    {
+      this.file = file;
+      this.size = size;
+    }
+
+    /**
+     * @return The file.
+     */
+    public File getFile ()
+    {
+      return file;
+    }
+
+    /**
+     * @return The size of the file in bytes at the time it was indexed.
+     */
+    public long getSize ()
+    {
+      return size;
+    }
+
+    @Override
+    public int compareTo (Entry other)
+    {
+      return file.compareTo(other.file);
+    }
+  }
+}
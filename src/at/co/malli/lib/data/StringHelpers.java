@@ -17,27 +17,70 @@
  */
 package at.co.malli.lib.data;
 
+import java.nio.ByteBuffer;
+
+
 /**
  * @author Dietmar Malli
  */
 public class StringHelpers {
   /**
-   * A small helper method to find non-ASCII digits in a String.
+   * A small helper method to find non-ASCII digits in a String. Control characters other than the line breaks (CR, LF)
+   * and NUL are treated as non-ASCII as well. Characters outside the BMP consist of surrogates, which are non-ASCII
+   * too, so it's enough to look at the chars.
    * @param line The String to scan.
    * @return true if there was a non-ASCII digit found in the line.
    */
   public static boolean containsNonASCII (String line)
   {
-    int[] charArr = new int[line.length()];
     for (int i = 0; i < line.length(); i++)
-      charArr[i] = line.codePointAt(i);
-    for(int c : charArr)
     {
-      if((c>=1 && c<=9) || c==11 || c==12 || (c>=14 && c<=31) || c>=127)
-      {
+      if(isNonASCII(line.charAt(i)))
+        return true;
+    }
+    return false;
+  }
+  
+  /**
+   * The same as containsNonASCII(String) for text which is already encoded in an ASCII compatible charset. Every byte
+   * with the highest bit set is part of a non-ASCII character.
+   * @param bytes The encoded text.
+   * @param offset The index of the first byte to scan.
+   * @param length The number of bytes to scan.
+   * @return true if there was a non-ASCII digit found in the given range.
+   */
+  public static boolean containsNonASCII (byte[] bytes, int offset, int length)
+  {
+    int end = offset + length;
+    for (int i = offset; i < end; i++)
+    {
+      if(isNonASCII(bytes[i] & 0xFF))
         return true;
-      }
     }
     return false;
   }
+  
+  /**
+   * The same as containsNonASCII(byte[], int, int) for the bytes between the position and the limit of a buffer. The
+   * position isn't changed.
+   * @param buffer The encoded text.
+   * @return true if there was a non-ASCII digit found in the buffer.
+   */
+  public static boolean containsNonASCII (ByteBuffer buffer)
+  {
+    if(buffer.hasArray())
+      return containsNonASCII(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    int end = buffer.limit();
+    for (int i = buffer.position(); i < end; i++)
+    {
+      if(isNonASCII(buffer.get(i) & 0xFF))
+        return true;
+    }
+    return false;
+  }
+  
+  private static boolean isNonASCII (int c)
+  {
+    return (c>=1 && c<=9) || c==11 || c==12 || (c>=14 && c<=31) || c>=127;
+  }
 }
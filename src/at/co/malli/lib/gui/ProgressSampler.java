@@ -0,0 +1,110 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.lib.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.Timer;
+
+
+/**
+ * Shows the progress of a background task in a ProgressDialog at a fixed rate. The task only stores its latest value
+ * with set(), which is cheap enough to be called for every line or track. A Swing timer hands it to the dialog if it
+ * changed since the last tick, so the EDT isn't flooded with updates nobody can see anyway.
+ * @author Dietmar Malli
+ */
+public class ProgressSampler implements ActionListener
+{
+  public static final int DEFAULT_INTERVAL = 50; //Milliseconds, 20 updates per second...
+  
+  private final ProgressDialog prog;
+  private final AtomicInteger value = new AtomicInteger(0);
+  private final Timer timer;
+  private int shown = 0; //Only used on the EDT...
+
+  /**
+   * @param prog The dialog which shows the progress.
+   */
+  public ProgressSampler (ProgressDialog prog)
+  {
+    this(prog, DEFAULT_INTERVAL);
+  }
+
+  /**
+   * @param prog The dialog which shows the progress.
+   * @param interval The time between two updates of the dialog in milliseconds.
+   */
+  public ProgressSampler (ProgressDialog prog, int interval)
+  {
+    this.prog = prog;
+    this.timer = new Timer(interval, this);
+    this.timer.setCoalesce(true);
+  }
+
+  /**
+   * Stores the current progress. It is shown with the next tick of the timer. May be called from any thread.
+   * @param value The progress value.
+   */
+  public void set (int value)
+  {
+    this.value.lazySet(value); //Visibility at the next tick is enough...
+  }
+
+  /**
+   * Shows a value right now, for example when a new step with another maximum begins. Must be called on the EDT.
+   * @param value The progress value.
+   */
+  public void reset (int value)
+  {
+    this.value.set(value);
+    shown = value;
+    prog.setValue(value);
+  }
+
+  /**
+   * Starts updating the dialog. Must be called on the EDT.
+   */
+  public void start ()
+  {
+    timer.start();
+  }
+
+  /**
+   * Stops updating the dialog. Must be called on the EDT.
+   */
+  public void stop ()
+  {
+    timer.stop();
+  }
+
+  /**
+   * Called by the timer on the EDT.
+   * @param e The event of the timer.
+   */
+  @Override
+  public void actionPerformed (ActionEvent e)
+  {
+    int current = value.get();
+    if(current != shown)
+    {
+      shown = current;
+      prog.setValue(current);
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package at.co.malli.relpm;
 
 import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.TagCache;
 import at.co.malli.lib.gui.ExceptionDisplayer;
 import at.co.malli.relpm.gui.MainGUI;
 import java.io.File;
@@ -161,6 +162,14 @@ public class RelPM
       logger.error(ex);
       ExceptionDisplayer.showErrorMessage(ex);
     }
+    try
+    {
+      TagCache.shutdown();
+    }
+    catch (IOException ex)
+    {
+      logger.error("Could not write the tag cache: " + ex.getMessage()); //Only costs speed on the next start...
+    }
     logger.trace("Exiting application");
     System.exit(0);
   }
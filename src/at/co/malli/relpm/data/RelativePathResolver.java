@@ -0,0 +1,126 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data;
+
+import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import at.co.malli.relpm.data.audiofiles.TrackFileList;
+import java.io.File;
+import java.nio.file.Path;
+
+
+/**
+ * Instances of this class calculate paths relative to one playlist directory. The directory is normalized once in the
+ * constructor, so relativizing a track only compares the name elements of the two paths. Neither regular expressions
+ * nor file system calls are involved. Like ResourceUtils.getRelativePath() the results always use '/' as separator.
+ * An instance is meant to be used by one thread at a time.
+ * @author Dietmar Malli
+ */
+public class RelativePathResolver
+{
+  private final File directory;
+  private final Path base;
+
+
+  /**
+   * @param directory The directory to which the paths should be relative. Usually the parent of a playlist.
+   */
+  public RelativePathResolver (File directory)
+  {
+    this.directory = directory.getAbsoluteFile();
+    this.base = this.directory.toPath().normalize();
+  }
+
+  /**
+   * @param playlist A playlist file.
+   * @return A resolver for the directory of the playlist.
+   */
+  public static RelativePathResolver forPlaylist (File playlist)
+  {
+    return new RelativePathResolver(playlist.getAbsoluteFile().getParentFile());
+  }
+
+  /**
+   * Calculates the path of a file relative to the directory of this resolver.
+   * @param target The file whose relative path is wanted.
+   * @return The relative path with '/' as separator.
+   * @throws PathResolutionException if the paths have different roots. This can for instance happen if the user
+   *         supplies a file on D:\ for a playlist on C:\.
+   */
+  public String relativize (File target) throws PathResolutionException
+  {
+    Path path = target.getAbsoluteFile().toPath().normalize();
+    if(!base.getRoot().equals(path.getRoot()))
+      throw new PathResolutionException("No common path element found for '" + path + "' and '" + base + "'");
+    String relative = base.relativize(path).toString();
+    if(File.separatorChar != '/')
+      relative = relative.replace(File.separatorChar, '/');
+    return relative;
+  }
+
+  /**
+   * Checks whether a file can be relativized to a directory without calculating the relative path. Only the roots of
+   * the paths are compared, the file system isn't accessed.
+   * @param directory The directory to which the path should be relative.
+   * @param target The file.
+   * @throws PathResolutionException if the paths have different roots.
+   */
+  public static void checkRoot (File directory, File target) throws PathResolutionException
+  {
+    Path base = directory.getAbsoluteFile().toPath();
+    Path path = target.getAbsoluteFile().toPath();
+    if(!base.getRoot().equals(path.getRoot()))
+      throw new PathResolutionException("No common path element found for '" + path + "' and '" + base + "'");
+  }
+
+  /**
+   * Calculates the path of a track relative to the directory of this resolver. The track keeps the result, so it is
+   * calculated only once per directory. If the track was parsed from a playlist in the same directory, the path as
+   * it was read is kept.
+   * @param track The track whose relative path is wanted.
+   * @return The relative path.
+   * @throws PathResolutionException if the paths have different roots.
+   */
+  public String relativize (TrackFile track) throws PathResolutionException
+  {
+    return track.getRelativePath(this);
+  }
+
+  /**
+   * Calculates the relative paths of all tracks of a list in one go. The tracks keep the results, so writing the list
+   * to the same directory afterwards doesn't calculate them again.
+   * @param list The tracks.
+   * @return The relative paths in the order of the list.
+   * @throws PathResolutionException if one of the paths has a different root.
+   */
+  public String[] relativize (TrackFileList list) throws PathResolutionException
+  {
+    String[] paths = new String[list.getSize()];
+    for(int i = 0; i < paths.length; i++)
+      paths[i] = relativize(list.get(i));
+    return paths;
+  }
+
+  /**
+   * @return The absolute directory to which the paths are relative.
+   */
+  public File getDirectory ()
+  {
+    return directory;
+  }
+}
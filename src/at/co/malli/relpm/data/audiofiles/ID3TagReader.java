@@ -0,0 +1,325 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import at.co.malli.lib.data.FileHelpers;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+
+/**
+ * Instances of this class read the tag information of an MP3 file on their own. Only the ID3v2 frames which are
+ * needed (TIT2, TPE1 and TLEN), the ID3v1 trailer and the first audio frame are read using positional reads, so
+ * neither the javax.sound service providers nor big embedded pictures are touched. If the length isn't tagged it is
+ * calculated by MpegDuration.
+ * @author Dietmar Malli
+ */
+public class ID3TagReader implements TagReader
+{
+  private static final int ID3V1_LENGTH = 128;
+
+  private String title = null;
+  private String artist = null;
+  private long lengthMillis = -1;
+  private final int lengthSeconds;
+
+
+  /**
+   * Instances of this class read the tag information of an MP3 file without an external library.
+   * @param file Instance of a file object containing the absolute path of the file to parse.
+   * @throws IOException if an I/O-Exception occurs or the ID3v2 tag uses features which aren't supported.
+   * @throws UnsupportedAudioFileException if the length is not tagged and no MPEG audio frame was found.
+   */
+  public ID3TagReader (File file) throws IOException, UnsupportedAudioFileException
+  {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      long audioStart = readID3v2(channel);
+      long audioEnd = readID3v1(channel);
+      if(lengthMillis < 0)
+        lengthMillis = MpegDuration.read(channel, audioStart, audioEnd);
+    }
+    lengthSeconds = (int) (lengthMillis / 1000);
+  }
+
+  /**
+   * Reads the wanted frames of an ID3v2 tag at the beginning of the file if there is one.
+   * @param channel The opened file.
+   * @return The position of the first byte after the tag.
+   * @throws IOException if an I/O-Exception occurs or the tag is unsynchronised as a whole.
+   */
+  private long readID3v2 (FileChannel channel) throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(10);
+    if(FileHelpers.readFully(channel, header, 0) < 10 || header.get(0) != 'I' || header.get(1) != 'D'
+       || header.get(2) != '3')
+      return 0;
+    int major = header.get(3);
+    int flags = header.get(5) & 0xFF;
+    long tagEnd = 10 + syncsafe(header.getInt(6));
+    if(major == 4 && (flags & 0x10) != 0)
+      tagEnd += 10; //Footer...
+    if(major < 2 || major > 4)
+      return tagEnd; //Unknown version... Skip it.
+    if(major < 4 && (flags & 0x80) != 0)
+      throw new IOException("Unsynchronised ID3v2." + major + " tags are not supported");
+
+    long pos = 10;
+    if(major > 2 && (flags & 0x40) != 0) //Extended header...
+    {
+      ByteBuffer size = ByteBuffer.allocate(4);
+      FileHelpers.readFully(channel, size, pos);
+      if(major == 3)
+        pos += 4 + size.getInt(0);
+      else
+        pos += syncsafe(size.getInt(0));
+    }
+
+    int headerLength = (major == 2 ? 6 : 10);
+    ByteBuffer frameHeader = ByteBuffer.allocate(headerLength);
+    while(pos + headerLength <= tagEnd && (title == null || artist == null || lengthMillis < 0))
+    {
+      frameHeader.clear();
+      if(FileHelpers.readFully(channel, frameHeader, pos) < headerLength || frameHeader.get(0) == 0)
+        break; //Padding...
+      String id;
+      int size;
+      int formatFlags = 0;
+      if(major == 2)
+      {
+        id = new String(frameHeader.array(), 0, 3, StandardCharsets.ISO_8859_1);
+        size = ((frameHeader.get(3) & 0xFF) << 16) | ((frameHeader.get(4) & 0xFF) << 8) | (frameHeader.get(5) & 0xFF);
+      }
+      else
+      {
+        id = new String(frameHeader.array(), 0, 4, StandardCharsets.ISO_8859_1);
+        size = (major == 4 ? syncsafe(frameHeader.getInt(4)) : frameHeader.getInt(4));
+        formatFlags = frameHeader.get(9) & 0xFF;
+      }
+      if(size <= 0 || pos + headerLength + size > tagEnd)
+        break; //Broken tag...
+      long contentPos = pos + headerLength;
+      pos = contentPos + size;
+
+      int wanted = wantedFrame(id);
+      if(wanted < 0)
+        continue;
+      byte[] content = readFrameContent(channel, contentPos, size, major, formatFlags);
+      if(content == null)
+        continue;
+      String text = decodeText(content);
+      switch(wanted)
+      {
+        case 0:
+          title = text;
+        break;
+        case 1:
+          artist = text;
+        break;
+        case 2:
+          try
+          {
+            lengthMillis = Long.parseLong(text.trim());
+          }
+          catch (NumberFormatException ex)
+          {
+            lengthMillis = -1; //Calculate it from the audio data...
+          }
+        break;
+      }
+    }
+    return tagEnd;
+  }
+
+  /**
+   * @param id The ID of an ID3v2 frame.
+   * @return 0 for the title, 1 for the artist, 2 for the length or -1 if the frame isn't needed.
+   */
+  private int wantedFrame (String id)
+  {
+    switch(id)
+    {
+      case "TIT2":
+      case "TT2":
+        return (title == null ? 0 : -1);
+      case "TPE1":
+      case "TP1":
+        return (artist == null ? 1 : -1);
+      case "TLEN":
+      case "TLE":
+        return (lengthMillis < 0 ? 2 : -1);
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Reads the content of a frame and removes the frame format specific additions.
+   * @return The raw content or null if the frame is compressed or encrypted.
+   */
+  private byte[] readFrameContent (FileChannel channel, long pos, int size, int major, int formatFlags)
+                                   throws IOException
+  {
+    int skip = 0;
+    boolean unsynchronised = false;
+    if(major == 3)
+    {
+      if((formatFlags & 0xC0) != 0)
+        return null; //Compressed or encrypted...
+      if((formatFlags & 0x20) != 0)
+        skip = 1; //Grouping identity...
+    }
+    else if(major == 4)
+    {
+      if((formatFlags & 0x0C) != 0)
+        return null; //Compressed or encrypted...
+      if((formatFlags & 0x40) != 0)
+        skip++; //Grouping identity...
+      if((formatFlags & 0x01) != 0)
+        skip += 4; //Data length indicator...
+      unsynchronised = (formatFlags & 0x02) != 0;
+    }
+    if(skip >= size)
+      return null;
+    ByteBuffer buf = ByteBuffer.allocate(size - skip);
+    FileHelpers.readFully(channel, buf, pos + skip);
+    byte[] content = new byte[buf.remaining()];
+    buf.get(content);
+    if(unsynchronised)
+      content = removeUnsynchronisation(content);
+    return content;
+  }
+
+  /**
+   * Reads the ID3v1 trailer if there is one and takes the title and the artist from it if the ID3v2 tag didn't
+   * contain them.
+   * @param channel The opened file.
+   * @return The position of the first byte after the audio data.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  private long readID3v1 (FileChannel channel) throws IOException
+  {
+    long size = channel.size();
+    if(size < ID3V1_LENGTH)
+      return size;
+    ByteBuffer tag = ByteBuffer.allocate(ID3V1_LENGTH);
+    FileHelpers.readFully(channel, tag, size - ID3V1_LENGTH);
+    if(tag.get(0) != 'T' || tag.get(1) != 'A' || tag.get(2) != 'G')
+      return size;
+    if(title == null)
+      title = decodeID3v1Field(tag.array(), 3);
+    if(artist == null)
+      artist = decodeID3v1Field(tag.array(), 33);
+    return size - ID3V1_LENGTH;
+  }
+
+  /**
+   * Decodes the content of an ID3v2 text frame.
+   * @param content The content of the frame starting with the encoding byte.
+   * @return The first string of the frame.
+   */
+  private static String decodeText (byte[] content)
+  {
+    if(content.length < 1)
+      return "";
+    Charset charset;
+    switch(content[0])
+    {
+      case 1:
+        charset = StandardCharsets.UTF_16;
+      break;
+      case 2:
+        charset = StandardCharsets.UTF_16BE;
+      break;
+      case 3:
+        charset = StandardCharsets.UTF_8;
+      break;
+      default:
+        charset = StandardCharsets.ISO_8859_1;
+      break;
+    }
+    String text = new String(content, 1, content.length - 1, charset);
+    int end = text.indexOf('\u0000');
+    if(end >= 0)
+      text = text.substring(0, end);
+    return text;
+  }
+
+  private static String decodeID3v1Field (byte[] tag, int offset)
+  {
+    int end = offset;
+    while(end < offset + 30 && tag[end] != 0)
+      end++;
+    String text = new String(tag, offset, end - offset, StandardCharsets.ISO_8859_1).trim();
+    return (text.isEmpty() ? null : text);
+  }
+
+  private static byte[] removeUnsynchronisation (byte[] content)
+  {
+    int length = 0;
+    for(int i = 0; i < content.length; i++)
+    {
+      content[length++] = content[i];
+      if(content[i] == (byte) 0xFF && i + 1 < content.length && content[i + 1] == 0)
+        i++;
+    }
+    byte[] result = new byte[length];
+    System.arraycopy(content, 0, result, 0, length);
+    return result;
+  }
+
+  private static int syncsafe (int value)
+  {
+    return ((value & 0x7F000000) >>> 3) | ((value & 0x7F0000) >>> 2) | ((value & 0x7F00) >>> 1) | (value & 0x7F);
+  }
+
+
+  /**
+   * @return The title parsed in the constructor of an instance.
+   */
+  @Override
+  public String getTitle ()
+  {
+    return title;
+  }
+
+  /**
+   * @return The artist parsed in the constructor of an instance.
+   */
+  @Override
+  public String getArtist ()
+  {
+    return artist;
+  }
+
+  /**
+   * @return The length in seconds parsed in the constructor of an instance.
+   */
+  @Override
+  public int getLengthSeconds ()
+  {
+    return lengthSeconds;
+  }
+
+}
@@ -19,10 +19,14 @@ package at.co.malli.relpm.data.audiofiles;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 
 /**
@@ -30,6 +34,8 @@ import javax.sound.sampled.UnsupportedAudioFileException;
  */
 public class MP3TagReader implements TagReader
 {
+  private static final Logger logger = LogManager.getLogger(MP3TagReader.class.getName());
+  
   private final String title;
   private final String artist;
   private final int lengthSeconds;
@@ -50,10 +56,31 @@ public class MP3TagReader implements TagReader
     Map<String, Object> properties = baseFileFormat.properties(); //Bug workaround?
     artist = (String) properties.get("author"); //null is a sane value for TrackFile...
     title = (String) properties.get("title"); //null is a sane value for TrackFile...
+    lengthSeconds = readLengthSeconds(properties);
+  }
+  
+  /**
+   * The "duration" of the external library is calculated from the bitrate of the first frame, which is wrong for
+   * variable bitrate files. MpegDuration is used instead, starting at the first frame found by the library.
+   * @param properties The properties of the AudioFileFormat.
+   * @return The length in seconds or -1 if it is unknown.
+   */
+  private int readLengthSeconds (Map<String, Object> properties)
+  {
+    Object headerPos = properties.get("mp3.header.pos");
+    long audioStart = (headerPos instanceof Integer ? (Integer) headerPos : 0);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      return (int) (MpegDuration.read(channel, audioStart, MpegDuration.findAudioEnd(channel)) / 1000);
+    }
+    catch (IOException | UnsupportedAudioFileException ex)
+    {
+      logger.debug("Using the duration of the external library for " + file + ": " + ex.getMessage());
+    }
     if(properties.get("duration") != null)
-      lengthSeconds = (int) (((long)properties.get("duration"))/(1000*1000));
+      return (int) (((long)properties.get("duration"))/(1000*1000));
     else
-      lengthSeconds = -1;
+      return -1;
   }
 
   
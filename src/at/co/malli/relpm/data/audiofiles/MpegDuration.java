@@ -0,0 +1,157 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import at.co.malli.lib.data.FileHelpers;
+import at.co.malli.relpm.data.SettingsProvider;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+
+/**
+ * Calculates the playing duration of an MPEG audio stream. The frame count stored in a Xing/Info or VBRI header of the
+ * first frame is exact for variable bitrate files. If there is no such header the frame headers can optionally be
+ * walked through a memory mapped file up to the number of frames set in data.import.vbrScanFrames. Otherwise a constant
+ * bitrate is assumed.
+ * @author Dietmar Malli
+ */
+public class MpegDuration
+{
+  private static final int FRAME_SEARCH_LENGTH = 16 * 1024;
+  private static final int ID3V1_LENGTH = 128;
+  private static final int VBRI_OFFSET = 4 + 32;
+  private static final int XING = 0x58696E67;
+  private static final int INFO = 0x496E666F;
+  private static final int VBRI = 0x56425249;
+
+  private MpegDuration ()
+  {
+  }
+
+  /**
+   * @param channel The opened file.
+   * @return The position of the first byte after the audio data. This is the beginning of an ID3v1 trailer if there
+   *         is one.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static long findAudioEnd (FileChannel channel) throws IOException
+  {
+    long size = channel.size();
+    if(size < ID3V1_LENGTH)
+      return size;
+    ByteBuffer tag = ByteBuffer.allocate(3);
+    FileHelpers.readFully(channel, tag, size - ID3V1_LENGTH);
+    if(tag.remaining() == 3 && tag.get(0) == 'T' && tag.get(1) == 'A' && tag.get(2) == 'G')
+      return size - ID3V1_LENGTH;
+    return size;
+  }
+
+  /**
+   * Calculates the duration of the audio data between audioStart and audioEnd.
+   * @param channel The opened file.
+   * @param audioStart The position after a leading tag. The first frame is searched from here on.
+   * @param audioEnd The position of the first byte after the audio data.
+   * @return The duration in milliseconds.
+   * @throws IOException if an I/O-Exception occurs.
+   * @throws UnsupportedAudioFileException if no MPEG audio frame was found.
+   */
+  public static long read (FileChannel channel, long audioStart, long audioEnd)
+                           throws IOException, UnsupportedAudioFileException
+  {
+    ByteBuffer buf = ByteBuffer.allocate(FRAME_SEARCH_LENGTH);
+    FileHelpers.readFully(channel, buf, audioStart);
+    int offset = MpegFrameHeader.findFirstFrame(buf);
+    if(offset < 0)
+      throw new UnsupportedAudioFileException("No MPEG audio frame found");
+    MpegFrameHeader frame = MpegFrameHeader.decode(buf.getInt(offset));
+
+    long frames = readHeaderFrameCount(buf, offset, frame);
+    if(frames > 0)
+      return toMillis(frames, frame);
+
+    long frameStart = audioStart + offset;
+    int scanFrames = SettingsProvider.getInstance().getInt("data.import.vbrScanFrames");
+    if(scanFrames > 0)
+    {
+      frames = scanFrameCount(channel, frameStart, audioEnd, scanFrames);
+      if(frames > 0)
+        return toMillis(frames, frame);
+    }
+    return (audioEnd - frameStart) * 8 * 1000 / frame.getBitrate(); //Constant bitrate...
+  }
+
+  /**
+   * Reads the number of frames from a Xing/Info or a VBRI header.
+   * @param buf The buffer containing the beginning of the audio data.
+   * @param offset The offset of the first frame in the buffer.
+   * @param frame The decoded first frame.
+   * @return The number of frames or -1 if the first frame doesn't contain such a header.
+   */
+  private static long readHeaderFrameCount (ByteBuffer buf, int offset, MpegFrameHeader frame)
+  {
+    int xing = offset + frame.getXingOffset();
+    if(xing + 12 <= buf.limit())
+    {
+      int id = buf.getInt(xing);
+      if((id == XING || id == INFO) && (buf.getInt(xing + 4) & 0x1) != 0)
+        return buf.getInt(xing + 8) & 0xFFFFFFFFL;
+    }
+    int vbri = offset + VBRI_OFFSET;
+    if(vbri + 18 <= buf.limit() && buf.getInt(vbri) == VBRI)
+      return buf.getInt(vbri + 14) & 0xFFFFFFFFL;
+    return -1;
+  }
+
+  /**
+   * Walks the frame headers starting at frameStart. If the walk stops at maxFrames before reaching audioEnd, the
+   * total number of frames is extrapolated from the average frame length seen so far.
+   * @return The (estimated) number of frames or -1 if not a single frame was found.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  private static long scanFrameCount (FileChannel channel, long frameStart, long audioEnd, int maxFrames)
+                                      throws IOException
+  {
+    long length = Math.min(audioEnd - frameStart, Integer.MAX_VALUE);
+    if(length < 4)
+      return -1;
+    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, frameStart, length);
+    int pos = 0;
+    long frames = 0;
+    while(frames < maxFrames && pos + 4 <= length)
+    {
+      MpegFrameHeader frame = MpegFrameHeader.decode(map.getInt(pos));
+      if(frame == null)
+        break; //End of the stream or garbage...
+      pos += frame.getFrameLength();
+      frames++;
+    }
+    if(frames == 0)
+      return -1;
+    if(pos >= length || frames < maxFrames)
+      return frames;
+    return (long) (frames * ((double) (audioEnd - frameStart) / pos));
+  }
+
+  private static long toMillis (long frames, MpegFrameHeader frame)
+  {
+    return frames * frame.getSamplesPerFrame() * 1000 / frame.getSampleRate();
+  }
+}
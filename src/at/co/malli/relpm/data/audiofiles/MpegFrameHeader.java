@@ -0,0 +1,191 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Instances of this class represent the decoded 4 byte header of one MPEG audio frame.
+ * @author Dietmar Malli
+ */
+public class MpegFrameHeader
+{
+  public static final int MPEG_1 = 0;
+  public static final int MPEG_2 = 1;
+  public static final int MPEG_2_5 = 2;
+  public static final int CHANNEL_MODE_MONO = 3;
+
+  private static final int[][] BITRATES_KBPS = { //[MPEG-1 layer I..III, MPEG-2/2.5 layer I, II+III][index]
+    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+  };
+  private static final int[][] SAMPLE_RATES = { //[version][index]
+    {44100, 48000, 32000},
+    {22050, 24000, 16000},
+    {11025, 12000, 8000}
+  };
+
+  private final int version;
+  private final int layer;
+  private final int bitrate;
+  private final int sampleRate;
+  private final int padding;
+  private final int channelMode;
+
+
+  private MpegFrameHeader (int version, int layer, int bitrate, int sampleRate, int padding, int channelMode)
+  {
+    this.version = version;
+    this.layer = layer;
+    this.bitrate = bitrate;
+    this.sampleRate = sampleRate;
+    this.padding = padding;
+    this.channelMode = channelMode;
+  }
+
+  /**
+   * Decodes a frame header.
+   * @param header The 4 header bytes in big endian order.
+   * @return The decoded header or null if the bytes are no valid frame header. Free format frames are treated as
+   *         invalid because their length can't be calculated from the header.
+   */
+  public static MpegFrameHeader decode (int header)
+  {
+    if((header & 0xFFE00000) != 0xFFE00000)
+      return null;
+    int versionBits = (header >>> 19) & 0x3;
+    int layerBits = (header >>> 17) & 0x3;
+    int bitrateIndex = (header >>> 12) & 0xF;
+    int sampleRateIndex = (header >>> 10) & 0x3;
+    if(versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3)
+      return null;
+
+    int version = (versionBits == 3 ? MPEG_1 : (versionBits == 2 ? MPEG_2 : MPEG_2_5));
+    int layer = 4 - layerBits;
+    int table;
+    if(version == MPEG_1)
+      table = layer - 1;
+    else
+      table = (layer == 1 ? 3 : 4);
+    int bitrate = BITRATES_KBPS[table][bitrateIndex] * 1000;
+    int sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+    int padding = (header >>> 9) & 0x1;
+    int channelMode = (header >>> 6) & 0x3;
+    return new MpegFrameHeader(version, layer, bitrate, sampleRate, padding, channelMode);
+  }
+
+  /**
+   * Searches a buffer for the first frame header which is followed by another frame header of the same stream type.
+   * Requiring a second header avoids taking random bytes of garbage or of a tag for the beginning of the audio data.
+   * @param buf The buffer to scan from its position to its limit. The position is not changed.
+   * @return The offset of the found header relative to the position of the buffer or -1 if none was found.
+   */
+  public static int findFirstFrame (ByteBuffer buf)
+  {
+    int start = buf.position();
+    int end = buf.limit();
+    for(int i = start; i + 4 <= end; i++)
+    {
+      if((buf.get(i) & 0xFF) != 0xFF || (buf.get(i + 1) & 0xE0) != 0xE0)
+        continue;
+      MpegFrameHeader first = decode(buf.getInt(i));
+      if(first == null)
+        continue;
+      int next = i + first.getFrameLength();
+      if(next + 4 > end)
+        return i - start; //Can't verify it inside the buffer... Trust the only candidate.
+      MpegFrameHeader second = decode(buf.getInt(next));
+      if(second != null && second.version == first.version && second.layer == first.layer
+         && second.sampleRate == first.sampleRate)
+        return i - start;
+    }
+    return -1;
+  }
+
+  /**
+   * @return The length of the whole frame in bytes including the header.
+   */
+  public int getFrameLength ()
+  {
+    if(layer == 1)
+      return (12 * bitrate / sampleRate + padding) * 4;
+    if(layer == 3 && version != MPEG_1)
+      return 72 * bitrate / sampleRate + padding;
+    return 144 * bitrate / sampleRate + padding;
+  }
+
+  /**
+   * @return The number of PCM samples per channel encoded in one frame.
+   */
+  public int getSamplesPerFrame ()
+  {
+    if(layer == 1)
+      return 384;
+    if(layer == 3 && version != MPEG_1)
+      return 576;
+    return 1152;
+  }
+
+  /**
+   * @return The offset of a Xing or Info header relative to the beginning of the frame. It is located right after the
+   *         side information of a layer III frame.
+   */
+  public int getXingOffset ()
+  {
+    boolean mono = channelMode == CHANNEL_MODE_MONO;
+    if(version == MPEG_1)
+      return 4 + (mono ? 17 : 32);
+    return 4 + (mono ? 9 : 17);
+  }
+
+  /**
+   * @return One of the constants MPEG_1, MPEG_2 and MPEG_2_5.
+   */
+  public int getVersion ()
+  {
+    return version;
+  }
+
+  /**
+   * @return The layer (1, 2 or 3).
+   */
+  public int getLayer ()
+  {
+    return layer;
+  }
+
+  /**
+   * @return The bitrate of this frame in bits per second.
+   */
+  public int getBitrate ()
+  {
+    return bitrate;
+  }
+
+  /**
+   * @return The sample rate in Hz.
+   */
+  public int getSampleRate ()
+  {
+    return sampleRate;
+  }
+}
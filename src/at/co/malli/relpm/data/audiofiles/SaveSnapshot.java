@@ -0,0 +1,107 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import java.io.File;
+
+
+/**
+ * Instances of this class describe the layout of a playlist file as it was written by the last save of a
+ * TrackFileList: the byte offset at which each track starts, the encoding and the size and modification time of the
+ * file right after it was written. As long as the file wasn't touched since, the bytes of unchanged tracks can be
+ * copied from it instead of being encoded again.
+ * @author Dietmar Malli
+ */
+public class SaveSnapshot
+{
+  private final File file;
+  private final String encoding;
+  private final long[] offsets;
+  private final long length;
+  private final long lastModified;
+
+
+  /**
+   * @param file The written playlist file.
+   * @param encoding The encoding which was used. ("DEFAULT" or the name of a charset)
+   * @param offsets The offset of the first byte of each track. The last element is the offset of the first byte after
+   *                the tracks, so the array is one element longer than the list.
+   */
+  public SaveSnapshot (File file, String encoding, long[] offsets)
+  {
+    this.file = file.getAbsoluteFile();
+    this.encoding = encoding;
+    this.offsets = offsets;
+    this.length = this.file.length();
+    this.lastModified = this.file.lastModified();
+  }
+
+  /**
+   * Checks whether the file can be used as the source of unchanged tracks.
+   * @param target The file which is about to be written.
+   * @param targetEncoding The encoding which is about to be used.
+   * @return True if the target is the file this snapshot describes, the encoding is the same and the file wasn't
+   *         changed on disk since it was written.
+   */
+  public boolean isValidFor (File target, String targetEncoding)
+  {
+    return file.equals(target.getAbsoluteFile()) && encoding.equals(targetEncoding) && file.length() == length
+           && file.lastModified() == lastModified;
+  }
+
+  /**
+   * @param index The index of a track in the saved list or the number of tracks.
+   * @return The offset of the first byte of the track or the offset of the first byte after all tracks.
+   */
+  public long getOffset (int index)
+  {
+    return offsets[index];
+  }
+
+  /**
+   * @return The number of tracks which were saved.
+   */
+  public int getTrackCount ()
+  {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return The length of the written file in bytes.
+   */
+  public long getLength ()
+  {
+    return length;
+  }
+
+  /**
+   * @return The encoding which was used. ("DEFAULT" or the name of a charset)
+   */
+  public String getEncoding ()
+  {
+    return encoding;
+  }
+
+  /**
+   * @return The written file.
+   */
+  public File getFile ()
+  {
+    return file;
+  }
+}
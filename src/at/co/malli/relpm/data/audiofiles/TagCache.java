@@ -0,0 +1,363 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import at.co.malli.relpm.data.SettingsProvider;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A small class implementing the singleton design pattern which keeps the tag information of already read audio files
+ * in the user's directory. An entry is only valid as long as the size and the modification time of the file did not
+ * change, so a hit only costs the file system metadata of the file. The cache belongs to the TagReader selected by
+ * data.import.tagReader and is dropped when another one is selected, as the readers don't deliver the same results for
+ * every file. When the cache is written, entries which weren't used for MAX_UNUSED_AGE are dropped, which also gets rid
+ * of files which no longer exist, and only the data.import.tagCacheEntries most recently used entries are kept.
+ * @author Dietmar Malli
+ */
+public class TagCache
+{
+  private static final Logger logger = LogManager.getLogger(TagCache.class.getName());
+
+  //Volatile to prevent VM from optimizing the Double-Checking of theInstance
+  private static volatile TagCache theInstance=null;
+  /**
+   * @return The only existing instance of this class.
+   */
+  public static TagCache getInstance()
+  {
+    if(theInstance==null)
+    {
+      synchronized (TagCache.class)
+      {
+        if (theInstance==null)
+          theInstance = new TagCache();
+      }
+    }
+
+    return theInstance;
+  }
+
+  public static final String cacheFilename = System.getProperty("user.home")+"/.RelPM/RelPM-tagcache.bin";
+  private static final int FILE_MAGIC = 0x52504d54; //"RPMT"
+  private static final int FILE_VERSION = 1;
+  public static final long MAX_UNUSED_AGE = 180L * 24 * 60 * 60 * 1000; //ms
+  private static final long LAST_USED_RESOLUTION = 24 * 60 * 60 * 1000; //ms, so not every hit rewrites the cache...
+
+  private final Map<String,Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean modified = false;
+  private volatile String reader; //The TagReader setting the entries were read with...
+
+  /**
+   * Sets up the object and reads the cache file if there is one. This is only called one time when getInstance() is
+   * called the first time.
+   */
+  private TagCache ()
+  {
+    reader = getReaderSetting();
+    try
+    {
+      read();
+    }
+    catch (FileNotFoundException ex)
+    {
+      logger.trace(cacheFilename + " not found... Starting with an empty tag cache...");
+    }
+    catch (IOException ex)
+    {
+      entries.clear(); //A broken cache is just a cold cache...
+      logger.warn("Could not read " + cacheFilename + ": " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Searches the cache for the tag information of a file.
+   * @param file The audio file.
+   * @param size The current size of the file in bytes.
+   * @param lastModified The current modification time of the file as returned by File.lastModified().
+   * @return The cached tag information or null if there is no entry or the file changed since it was cached.
+   */
+  public TagReader get (File file, long size, long lastModified)
+  {
+    checkReader();
+    Entry entry = entries.get(file.getAbsolutePath());
+    if(entry == null || entry.size != size || entry.lastModified != lastModified)
+      return null;
+    long now = System.currentTimeMillis();
+    if(now - entry.lastUsed >= LAST_USED_RESOLUTION)
+    {
+      entry.lastUsed = now;
+      modified = true;
+    }
+    return entry;
+  }
+
+  /**
+   * @param file The audio file.
+   * @return The size the file had when its tags were cached or -1 if it isn't in the cache. The file itself isn't
+   *         checked, so this also works for files which were moved away since.
+   */
+  public long getCachedSize (File file)
+  {
+    Entry entry = entries.get(file.getAbsolutePath());
+    return (entry == null ? -1 : entry.size);
+  }
+
+  /**
+   * Stores the tag information of a file. An existing entry for the same path gets replaced.
+   * @param file The audio file.
+   * @param size The size of the file in bytes at the time the tags were read.
+   * @param lastModified The modification time of the file at the time the tags were read.
+   * @param tags The tag information which was read from the file.
+   */
+  public void put (File file, long size, long lastModified, TagReader tags)
+  {
+    checkReader();
+    entries.put(file.getAbsolutePath(), new Entry(size, lastModified, tags.getTitle(), tags.getArtist(),
+                                                  tags.getLengthSeconds(), System.currentTimeMillis()));
+    modified = true;
+  }
+
+  /**
+   * Drops all entries if another TagReader was selected since they were read.
+   */
+  private void checkReader ()
+  {
+    String current = getReaderSetting();
+    if(current.equals(reader))
+      return;
+    synchronized(this)
+    {
+      if(current.equals(reader))
+        return;
+      logger.trace("TagReader changed from " + reader + " to " + current + "... Dropping the tag cache...");
+      entries.clear();
+      reader = current;
+      modified = true;
+    }
+  }
+
+  private static String getReaderSetting ()
+  {
+    return SettingsProvider.getInstance().getString("data.import.tagReader");
+  }
+
+  /**
+   * Removes the entries which weren't used for MAX_UNUSED_AGE and the least recently used ones above the limit of
+   * data.import.tagCacheEntries.
+   * @return The remaining entries, the most recently used first.
+   */
+  private ArrayList<Usage> prune ()
+  {
+    //Readers may still be using entries, so their last use is taken once to sort by it...
+    ArrayList<Usage> copy = new ArrayList<>(entries.size());
+    for(Map.Entry<String,Entry> item : entries.entrySet())
+      copy.add(new Usage(item.getKey(), item.getValue()));
+    Collections.sort(copy, new Comparator<Usage>()
+    {
+      @Override
+      public int compare (Usage o1, Usage o2)
+      {
+        return Long.compare(o2.lastUsed, o1.lastUsed);
+      }
+    });
+    int maxEntries = SettingsProvider.getInstance().getInt("data.import.tagCacheEntries");
+    long oldest = System.currentTimeMillis() - MAX_UNUSED_AGE;
+    int keep = 0;
+    while(keep < copy.size() && keep < maxEntries && copy.get(keep).lastUsed >= oldest)
+      keep++;
+    List<Usage> dropped = copy.subList(keep, copy.size());
+    for(Usage item : dropped)
+      entries.remove(item.path, item.entry); //Unless it was put again meanwhile...
+    if(!dropped.isEmpty())
+      logger.trace("Dropped " + dropped.size() + " unused entries from the tag cache");
+    dropped.clear();
+    return copy;
+  }
+
+  /**
+   * Writes the cache into the user's directory if it was modified since it was read. The file is written next to the
+   * old one first, so an interrupted write leaves the old cache intact.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void write () throws IOException
+  {
+    if(!modified)
+      return;
+    modified = false; //Entries put while writing are written the next time...
+    String writtenReader = reader;
+    ArrayList<Usage> copy = prune();
+    File cacheFile = new File(cacheFilename);
+    File tempFile = new File(cacheFilename + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+    {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeUTF(writtenReader);
+      out.writeInt(copy.size());
+      for(Usage item : copy)
+      {
+        Entry entry = item.entry;
+        out.writeUTF(item.path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeLong(item.lastUsed);
+        writeNullableString(out, entry.title);
+        writeNullableString(out, entry.artist);
+        out.writeInt(entry.lengthSeconds);
+      }
+    }
+    Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    logger.trace("Wrote " + copy.size() + " entries to " + cacheFilename);
+  }
+
+  /**
+   * Writes the cache if it was ever used during this session. This is meant to be called on application shutdown.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public static void shutdown () throws IOException
+  {
+    TagCache instance = theInstance;
+    if(instance != null)
+      instance.write();
+  }
+
+  /**
+   * Reads the cache file into memory.
+   * @throws IOException if an I/O-Exception occurs or the file is no tag cache of a known version.
+   */
+  private void read () throws IOException
+  {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFilename))))
+    {
+      if(in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION)
+        throw new IOException("Unknown tag cache format");
+      String writtenReader = in.readUTF();
+      if(!writtenReader.equals(reader))
+      {
+        logger.trace("Tag cache was read with " + writtenReader + " instead of " + reader + "... Starting empty...");
+        modified = true; //Replaces the old file...
+        return;
+      }
+      int count = in.readInt();
+      for(int i = 0; i < count; i++)
+      {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        long lastUsed = in.readLong();
+        String title = readNullableString(in);
+        String artist = readNullableString(in);
+        int lengthSeconds = in.readInt();
+        entries.put(path, new Entry(size, lastModified, title, artist, lengthSeconds, lastUsed));
+      }
+    }
+    logger.trace("Read " + entries.size() + " entries from " + cacheFilename);
+  }
+
+  private static void writeNullableString (DataOutputStream out, String value) throws IOException
+  {
+    out.writeBoolean(value != null);
+    if(value != null)
+      out.writeUTF(value);
+  }
+
+  private static String readNullableString (DataInputStream in) throws IOException
+  {
+    if(in.readBoolean())
+      return in.readUTF();
+    return null;
+  }
+
+  /**
+   * One cached file. The size and modification time are used to detect changed files, the time it was used the last
+   * time to prune the cache.
+   */
+  private static class Entry implements TagReader
+  {
+    private final long size;
+    private final long lastModified;
+    private final String title;
+    private final String artist;
+    private final int lengthSeconds;
+    private volatile long lastUsed;
+
+    private Entry (long size, long lastModified, String title, String artist, int lengthSeconds, long lastUsed)
+    {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.title = title;
+      this.artist = artist;
+      this.lengthSeconds = lengthSeconds;
+      this.lastUsed = lastUsed;
+    }
+
+    @Override
+    public String getTitle ()
+    {
+      return title;
+    }
+
+    @Override
+    public String getArtist ()
+    {
+      return artist;
+    }
+
+    @Override
+    public int getLengthSeconds ()
+    {
+      return lengthSeconds;
+    }
+  }
+
+  /**
+   * An entry together with the time it was used the last time, taken once for pruning.
+   */
+  private static class Usage
+  {
+    private final String path;
+    private final Entry entry;
+    private final long lastUsed;
+
+    private Usage (String path, Entry entry)
+    {
+      this.path = path;
+      this.entry = entry;
+      this.lastUsed = entry.lastUsed;
+    }
+  }
+}
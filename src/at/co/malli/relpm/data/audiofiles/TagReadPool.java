@@ -0,0 +1,122 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.audiofiles;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A bounded pool of worker threads which calls TrackFile.parseTagsFromFile() for the submitted tracks. The tracks are
+ * modified in place, so the order of a list holding them is never touched by the pool.
+ * @author Dietmar Malli
+ */
+public class TagReadPool
+{
+  private final ExecutorService executor;
+  private final ExecutorCompletionService<TrackFile> completion;
+  private int submitted = 0;
+  private int completed = 0;
+
+  /**
+   * @param threads The maximum number of tag reads which may run at the same time.
+   */
+  public TagReadPool (int threads)
+  {
+    final AtomicInteger threadNumber = new AtomicInteger(0);
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+    {
+      @Override
+      public Thread newThread (Runnable r)
+      {
+        Thread t = new Thread(r, "TagReadPool-" + threadNumber.incrementAndGet());
+        t.setDaemon(true); //Must never keep the application alive...
+        return t;
+      }
+    });
+    this.completion = new ExecutorCompletionService<>(executor);
+  }
+
+  /**
+   * Queues the tag reading of a track. This method returns immediately.
+   * @param track The track whose tags should be read.
+   */
+  public void submit (final TrackFile track)
+  {
+    completion.submit(new Callable<TrackFile>()
+    {
+      @Override
+      public TrackFile call () throws Exception
+      {
+        track.parseTagsFromFile();
+        return track;
+      }
+    });
+    submitted++;
+  }
+
+  /**
+   * Blocks until the next submitted track has its tags read.
+   * @return The track which was finished.
+   * @throws InterruptedException if the waiting thread got interrupted.
+   * @throws ExecutionException if reading the tags threw an unexpected exception.
+   */
+  public TrackFile awaitNext () throws InterruptedException, ExecutionException
+  {
+    TrackFile track = completion.take().get();
+    completed++;
+    return track;
+  }
+
+  /**
+   * @return True if every submitted track was already handed out by awaitNext().
+   */
+  public boolean isDone ()
+  {
+    return completed >= submitted;
+  }
+
+  /**
+   * @return The number of tracks submitted up to now.
+   */
+  public int getSubmitted ()
+  {
+    return submitted;
+  }
+
+  /**
+   * @return The number of tracks which were handed out by awaitNext() up to now.
+   */
+  public int getCompleted ()
+  {
+    return completed;
+  }
+
+  /**
+   * Stops all worker threads. Queued tracks which were not read yet will keep their invalid tag state.
+   */
+  public void shutdown ()
+  {
+    executor.shutdownNow();
+  }
+}
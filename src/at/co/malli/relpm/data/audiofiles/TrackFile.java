@@ -17,11 +17,17 @@
  */
 package at.co.malli.relpm.data.audiofiles;
 
+import at.co.malli.lib.data.DirectoryListingCache;
 import at.co.malli.lib.data.FileHelpers;
+import at.co.malli.relpm.data.RelativePathResolver;
 import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
+import at.co.malli.relpm.data.SettingsProvider;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,16 +41,23 @@ public class TrackFile
   private static final Logger logger = LogManager.getLogger(TrackFile.class.getName());
   
   private final File parsedPlaylistFile;
+  private final File parsedDirectory;
   private File absolutePath;
-  private String relativePath;   //Path relative to playlist...
+  private String relativePath = null;   //Path relative to the parsed playlist, calculated when needed...
+  private File targetDirectory = null;  //Directory of the last other playlist the path was relativized to...
+  private String targetRelativePath = null;
   private String title = null;   //Invalid state
   private String artist = null;  //Invalid state
   private int lengthSeconds = -1;//Invalid state
+  private byte[] encodedLine = null;      //The lines written for this track the last time, see getEncodedLine()...
+  private File encodedDirectory = null;
+  private Charset encodedCharset = null;
+  private volatile boolean tagsPending = false; //The tags are read later by readPendingTags()...
 
 
   /**
-   * Instances of this class represent a file in a playlist. The methods for relative path resolution and tag reading
-   * are called within the constructor of an instance.
+   * Instances of this class represent a file in a playlist. Only the existence of the file is checked within the
+   * constructor. The relative path is calculated when it is needed for the first time.
    * @param playlist A file object referencing the the playlist to which the path should be relative...
    * @param pathFromPlaylist A String containing the path to the track usually taken from a playlist. It can either be
    *                         relative or absolute.
@@ -54,20 +67,39 @@ public class TrackFile
    *         playlist on C:\.
    */
   public TrackFile (File playlist, String pathFromPlaylist) throws FileNotFoundException, PathResolutionException
+  {
+    this(playlist, pathFromPlaylist, (DirectoryListingCache) null);
+  }
+  
+  /**
+   * Instances of this class represent a file in a playlist. The existence of the file is checked using the listing of
+   * its directory. This avoids one stat call per track when a whole playlist is parsed.
+   * @param playlist A file object referencing the the playlist to which the path should be relative...
+   * @param pathFromPlaylist A String containing the path to the track usually taken from a playlist. It can either be
+   *                         relative or absolute.
+   * @param listing The shared directory listings (usually DirectoryListingCache.getInstance()) or null to ask the
+   *                file system for every file.
+   * @throws java.io.FileNotFoundException If pathFromPlaylist could not be parsed.
+   * @throws at.co.malli.relpm.data.ResourceUtils.PathResolutionException if the path of the found file from
+   *         pathFromPlaylistcan't be relativized.
+   */
+  public TrackFile (File playlist, String pathFromPlaylist, DirectoryListingCache listing) throws FileNotFoundException,
+                                                                                               PathResolutionException
   {
     this.parsedPlaylistFile = playlist;
+    this.parsedDirectory = playlist.getAbsoluteFile().getParentFile();
     File playlistDirectory = playlist.getParentFile();
     
     File f = new File(pathFromPlaylist); //Case absolute path supplied...
-    if(f.isFile())
+    if(isFile(f, listing))
     {
       absolutePath = f;
-      relativePath = FileHelpers.calculateRelativePath(playlistDirectory, absolutePath);
+      RelativePathResolver.checkRoot(parsedDirectory, absolutePath); //The relative path itself is calculated later...
     }
     else
     {
       f = new File(playlistDirectory.getAbsolutePath(),pathFromPlaylist); //case already a relative path...
-      if(f.isFile())
+      if(isFile(f, listing))
       {
         absolutePath = f;
         relativePath = pathFromPlaylist;
@@ -79,10 +111,11 @@ public class TrackFile
   }
   
   /**
-   * Instances of this class represent a file in a playlist. The methods for relative path resolution and tag reading
-   * are called within the constructor of an instance. This version of the constructor is usually called if an error
-   * occured while trying to find the pathFromPlaylist in the normal constructor. This should give the user the
-   * possibillity to point to a file referenced by the playlist which got moved without changing the pathFromPlaylist.
+   * Instances of this class represent a file in a playlist. Only the existence of the file is checked within the
+   * constructor. The relative path is calculated when it is needed for the first time. This version of the
+   * constructor is usually called if an error occured while trying to find the pathFromPlaylist in the normal
+   * constructor. This should give the user the possibillity to point to a file referenced by the playlist which got
+   * moved without changing the pathFromPlaylist.
    * @param playlist A File object referencing the the playlist to which the path should be relative...
    * @param pathFromPlaylist A String containing the path to the track usually taken from a playlist. It can either be
    *                         relative or absolute.
@@ -95,7 +128,7 @@ public class TrackFile
   public TrackFile (File playlist, String pathFromPlaylist, File userSuppliedAudioFile) throws FileNotFoundException, PathResolutionException
   {
     this.parsedPlaylistFile = playlist;
-    File playlistDirectory = playlist.getParentFile();
+    this.parsedDirectory = playlist.getAbsoluteFile().getParentFile();
     
     if(userSuppliedAudioFile.isFile())
     {
@@ -105,17 +138,25 @@ public class TrackFile
         absolutePath = wanted;
       else
         throw new FileNotFoundException("Could not open calculated absolutePath" + wanted.getAbsolutePath());
-      relativePath = FileHelpers.calculateRelativePath(playlistDirectory, absolutePath);
+      RelativePathResolver.checkRoot(parsedDirectory, absolutePath);
     }
     else
       throw new FileNotFoundException("Could not open userSuppliedAudioFile" + userSuppliedAudioFile.getAbsolutePath());
   }
   
+  private static boolean isFile (File file, DirectoryListingCache listing)
+  {
+    if(listing != null)
+      return listing.isFile(file);
+    return file.isFile();
+  }
+  
   /**
    * This method reads the tags of an audiofile using an external class.
    */
   public void parseTagsFromFile ()
   {
+    encodedLine = null;
     if(!FileHelpers.getExtension(absolutePath).equals("mp3"))
     {
       logger.warn("Reading the tag info of files other than mp3 is not supported (yet): " + absolutePath);
@@ -125,12 +166,41 @@ public class TrackFile
       return;
     }
     
+    boolean useCache = SettingsProvider.getInstance().getBoolean("data.import.tagCache");
+    long size = 0;
+    long lastModified = 0;
+    if(useCache)
+    {
+      try
+      {
+        //Not taken from the DirectoryListingCache: A file changed in place keeps its listed attributes for minutes.
+        BasicFileAttributes attrs = Files.readAttributes(absolutePath.toPath(), BasicFileAttributes.class);
+        size = attrs.size();
+        lastModified = attrs.lastModifiedTime().toMillis();
+      }
+      catch (IOException ex)
+      {
+        size = absolutePath.length();
+        lastModified = absolutePath.lastModified();
+      }
+      TagReader cached = TagCache.getInstance().get(absolutePath, size, lastModified);
+      if(cached != null) //Nothing changed since the file was read the last time...
+      {
+        artist = cached.getArtist();
+        title = cached.getTitle();
+        lengthSeconds = cached.getLengthSeconds();
+        return;
+      }
+    }
+
     try
     {
-      MP3TagReader reader = new MP3TagReader(absolutePath);
+      TagReader reader = createTagReader(absolutePath);
       artist = reader.getArtist();
       title = reader.getTitle();
       lengthSeconds = reader.getLengthSeconds();
+      if(useCache)
+        TagCache.getInstance().put(absolutePath, size, lastModified, reader);
     }
     catch (IOException | UnsupportedAudioFileException ex)
     {
@@ -141,6 +211,61 @@ public class TrackFile
     }
   }
   
+  /**
+   * Marks the tags of this track to be read later by readPendingTags() instead of right now. The list can be shown
+   * with the path names meanwhile.
+   */
+  public void deferTags ()
+  {
+    tagsPending = true;
+  }
+  
+  /**
+   * @return True if the tags were deferred and not read up to now.
+   */
+  public boolean isTagsPending ()
+  {
+    return tagsPending;
+  }
+  
+  /**
+   * Reads the deferred tags of this track. The background readers and a save may call it at the same time, but the
+   * file is only read once: Whoever comes second waits and finds the tags already read.
+   * @return True if the tags were read by this call.
+   */
+  public synchronized boolean readPendingTags ()
+  {
+    if(!tagsPending)
+      return false;
+    parseTagsFromFile();
+    tagsPending = false;
+    return true;
+  }
+  
+  /**
+   * Reads the tags of an MP3 file with the TagReader selected in the settings. The lightweight ID3TagReader falls back
+   * to the MP3TagReader if it can't handle a file.
+   * @param file The file to read.
+   * @return The TagReader which read the file.
+   * @throws IOException if an I/O-Exception occurs.
+   * @throws UnsupportedAudioFileException if the file does not contain audio data recognized by the system.
+   */
+  private static TagReader createTagReader (File file) throws IOException, UnsupportedAudioFileException
+  {
+    if(SettingsProvider.getInstance().getString("data.import.tagReader").equals("ID3"))
+    {
+      try
+      {
+        return new ID3TagReader(file);
+      }
+      catch (IOException | UnsupportedAudioFileException ex)
+      {
+        logger.debug("ID3TagReader failed for " + file + ", using MP3TagReader: " + ex.getMessage());
+      }
+    }
+    return new MP3TagReader(file);
+  }
+  
   /**
    * This Exception will be thrown if the filetype isn't supported yet.
    */
@@ -164,7 +289,16 @@ public class TrackFile
     else if(title != null)
       return title;
     else
-      return relativePath;
+    {
+      try
+      {
+        return getRelativePath();
+      }
+      catch (PathResolutionException ex)
+      {
+        return absolutePath.getPath();
+      }
+    }
   }
   /**
    * Getter method for the title.
@@ -197,6 +331,7 @@ public class TrackFile
   public void setTitle (String title)
   {
     this.title = title;
+    encodedLine = null;
   }
   /**
    * Setter method for the artist of the track.
@@ -205,6 +340,7 @@ public class TrackFile
   public void setArtist (String artist)
   {
     this.artist = artist;
+    encodedLine = null;
   }
   /**
    * Setter method for the length of the track in seconds.
@@ -213,16 +349,73 @@ public class TrackFile
   public void setLengthSeconds (int lengthSeconds)
   {
     this.lengthSeconds = lengthSeconds;
+    encodedLine = null;
   }
   
   /**
-   * Getter method for the relative path.
+   * Getter method for the path relative to the playlist from which this track was parsed. It is calculated on the
+   * first call and kept afterwards.
    * @return The relative path as a string.
+   * @throws at.co.malli.relpm.data.ResourceUtils.PathResolutionException if the path can't be relativized.
    */
-  public String getRelativePath()
+  public String getRelativePath () throws PathResolutionException
   {
+    if(relativePath == null)
+      relativePath = FileHelpers.calculateRelativePath(parsedDirectory, absolutePath);
     return relativePath;
   }
+  
+  /**
+   * Getter method for the path relative to the directory of a resolver. The result for the parsed playlist directory
+   * and the one for the last other directory are kept, so saving the list to a new folder calculates every path only
+   * once, even if another playlist (for example the last-100 list) is written next to it.
+   * @param resolver A resolver for the directory of the playlist which is written.
+   * @return The relative path as a string.
+   * @throws at.co.malli.relpm.data.ResourceUtils.PathResolutionException if the path can't be relativized.
+   */
+  public String getRelativePath (RelativePathResolver resolver) throws PathResolutionException
+  {
+    File directory = resolver.getDirectory();
+    if(directory.equals(parsedDirectory))
+    {
+      if(relativePath == null)
+        relativePath = resolver.relativize(absolutePath);
+      return relativePath;
+    }
+    if(!directory.equals(targetDirectory))
+    {
+      targetRelativePath = resolver.relativize(absolutePath);
+      targetDirectory = directory;
+    }
+    return targetRelativePath;
+  }
+  /**
+   * Getter method for the encoded lines which were written for this track the last time. They only depend on the
+   * tags, the directory of the playlist and the charset, so they can be written again as they are as long as none of
+   * them changed.
+   * @param directory The absolute directory of the playlist which is written.
+   * @param charset The charset the playlist is written in.
+   * @return The encoded lines or null if they weren't stored for this directory and charset or a tag changed since.
+   */
+  public byte[] getEncodedLine (File directory, Charset charset)
+  {
+    if(encodedLine != null && directory.equals(encodedDirectory) && charset.equals(encodedCharset))
+      return encodedLine;
+    return null;
+  }
+  /**
+   * Stores the encoded lines written for this track. Only one directory and charset is kept. The setters of the tags
+   * drop them.
+   * @param directory The absolute directory of the playlist which was written.
+   * @param charset The charset the playlist was written in.
+   * @param line The encoded lines. The array must not be changed afterwards.
+   */
+  public void setEncodedLine (File directory, Charset charset, byte[] line)
+  {
+    encodedDirectory = directory;
+    encodedCharset = charset;
+    encodedLine = line;
+  }
   /**
    * Getter method for the file object which represents the TrackFiles absolute path.
    * @return The absolute path as java.io.File.
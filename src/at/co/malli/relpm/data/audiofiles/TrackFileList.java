@@ -19,6 +19,7 @@ package at.co.malli.relpm.data.audiofiles;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 
 /**
@@ -28,6 +29,15 @@ public class TrackFileList implements Iterable<TrackFile>
 {
   private final File playlist;
   private final ArrayList<TrackFile> list;
+  private SaveSnapshot snapshot = null; //Layout of the file written by the last save...
+  private int cleanHead = 0;            //Number of leading tracks unchanged since the last save...
+  private int cleanTail = 0;            //Number of trailing tracks unchanged since the last save...
+  private int edits = 0;                //Number of edits since the list was created...
+  private int saves = 0;                //Number of saves begun...
+  private int savingHead = 0;           //Number of leading tracks unchanged since the last save begun...
+  private int savingTail = 0;           //Number of trailing tracks unchanged since the last save begun...
+  private final IdentityHashMap<TrackFile,Integer> positions = new IdentityHashMap<>(); //For indexOf()...
+  private int indexed = 0;              //Number of leading entries in positions which are still correct...
 
   /**
    * Instances of this class can hold a reference to a playlist file and instances of TrackFiles relative to that
@@ -64,28 +74,115 @@ public class TrackFileList implements Iterable<TrackFile>
    */
   public TrackFile remove (int val)
   {
-    return list.remove(val);
+    changed(val, val + 1);
+    TrackFile removed = list.remove(val);
+    positions.remove(removed);
+    return removed;
+  }
+  /**
+   * Removes several TrackFiles in a single pass over the list. The remaining elements are only shifted once.
+   * @param selection The indices of the files to remove in ascending order.
+   * @return The removed files in their old order.
+   */
+  public ArrayList<TrackFile> removeIndices (int[] selection)
+  {
+    ArrayList<TrackFile> removed = new ArrayList<>(selection.length);
+    if(selection.length == 0)
+      return removed;
+    int size = list.size();
+    changed(selection[0], selection[selection.length - 1] + 1);
+    int write = selection[0];
+    int next = 0;
+    for(int read = selection[0]; read < size; read++)
+    {
+      TrackFile item = list.get(read);
+      if(next < selection.length && selection[next] == read)
+      {
+        removed.add(item);
+        positions.remove(item);
+        next++;
+      }
+      else
+        list.set(write++, item);
+    }
+    list.subList(write, size).clear();
+    return removed;
   }
   /**
    * Inserts elements from an ArrayList at the given position. elements.get(0) will be at this position once this method
-   * is done.
+   * is done. The ArrayList is empty afterwards.
    * @param index The position at which the files should be inserted.
    * @param elements An ArrayList containing elements which should be inserted.
    */
   public void add (int index, ArrayList<TrackFile> elements)
   {
-    int count = elements.size();
-    for(int i = index; i<index+count; i++)
-      list.add(i, elements.remove(0));
+    changed(index, index);
+    list.addAll(index, elements); //Shifts the following elements only once...
+    elements.clear();
+  }
+  /**
+   * Moves the selected files in front of the first unselected file at or after target. Only the range between the
+   * selection and the drop position is rewritten.
+   * @param selection The indices of the files to move in ascending order.
+   * @param target The drop position counted in the list before the move. The size of the list moves the files to the
+   *               end.
+   * @return The new index of the first moved file.
+   */
+  public int move (int[] selection, int target)
+  {
+    int next = target; //The first unselected file at or after target stays behind the moved ones...
+    for(int index : selection)
+    {
+      if(index == next)
+        next++;
+    }
+    if(selection.length == 0)
+      return next;
+    int from = Math.min(selection[0], next);
+    int to = Math.max(selection[selection.length - 1] + 1, next);
+    TrackFile[] moved = new TrackFile[to - from];
+    int count = 0;
+    int sel = 0;
+    for(int i = from; i < next; i++) //Unselected files in front of the drop position...
+    {
+      if(sel < selection.length && selection[sel] == i)
+        sel++;
+      else
+        moved[count++] = list.get(i);
+    }
+    int first = from + count;
+    for(int index : selection)
+      moved[count++] = list.get(index);
+    for(int i = next; i < to; i++) //Unselected files behind the drop position...
+    {
+      if(sel < selection.length && selection[sel] == i)
+        sel++;
+      else
+        moved[count++] = list.get(i);
+    }
+    boolean differs = false;
+    for(int i = 0; i < moved.length; i++)
+      differs |= (list.set(from + i, moved[i]) != moved[i]);
+    if(differs)
+      changed(from, to);
+    return first;
   }
   /**
-   * Seraches for the index of an element in the ArrayList.
+   * Seraches for the index of an element in the ArrayList. The positions are kept in an IdentityHashMap which is only
+   * updated behind the first change since the last lookup.
    * @param reference The reference of the object to be searched.
-   * @return Integer value representing the current index of the element.
+   * @return Integer value representing the current index of the element or -1 if it isn't contained.
    */
   public int indexOf (TrackFile reference)
   {
-    return list.indexOf(reference);
+    Integer position = positions.get(reference);
+    if(position != null && position < indexed)
+      return position;
+    for(int i = indexed; i < list.size(); i++)
+      positions.put(list.get(i), i);
+    indexed = list.size();
+    position = positions.get(reference);
+    return (position == null ? -1 : position);
   }
   /**
    * @return The File object representing the playlist.
@@ -94,6 +191,91 @@ public class TrackFileList implements Iterable<TrackFile>
   {
     return playlist;
   }
+  /**
+   * Shrinks the unchanged head and tail to exclude the given range of the current list. The indexed positions behind
+   * from are outdated afterwards.
+   * @param from The index of the first changed element.
+   * @param to The index after the last changed element. Equal to from for an insertion.
+   */
+  private void changed (int from, int to)
+  {
+    cleanHead = Math.min(cleanHead, from);
+    cleanTail = Math.min(cleanTail, list.size() - to);
+    edits++;
+    savingHead = Math.min(savingHead, from);
+    savingTail = Math.min(savingTail, list.size() - to);
+    indexed = Math.min(indexed, from);
+  }
+  /**
+   * @return The number of edits since the list was created. It changes with every edit, so a caller can tell whether
+   *         the list was edited since it looked at it the last time.
+   */
+  public int getEditCount ()
+  {
+    return edits;
+  }
+  /**
+   * @return A list with the same tracks in the same order and the same save state, which doesn't change if this one is
+   *         edited. The TrackFiles themselves are shared.
+   */
+  public TrackFileList copy ()
+  {
+    TrackFileList copy = new TrackFileList(new ArrayList<>(list), playlist);
+    copy.snapshot = snapshot;
+    copy.cleanHead = cleanHead;
+    copy.cleanTail = cleanTail;
+    return copy;
+  }
+  /**
+   * Starts tracking the edits made while the list is written. Must be called when the tracks for the save are taken.
+   * @return The number of the save, which has to be passed to setSaved().
+   */
+  public int beginSave ()
+  {
+    savingHead = list.size();
+    savingTail = list.size();
+    return ++saves;
+  }
+  /**
+   * Remembers the layout of a successful save. Only the tracks which weren't edited since beginSave() count as
+   * unchanged afterwards.
+   * @param snapshot The layout of the written file.
+   * @param save The number returned by beginSave() when the tracks for the save were taken.
+   */
+  public void setSaved (SaveSnapshot snapshot, int save)
+  {
+    if(save != saves) //Another save began meanwhile. Its edits aren't tracked from the state of this one...
+    {
+      this.snapshot = null;
+      return;
+    }
+    this.snapshot = snapshot;
+    this.cleanHead = savingHead;
+    this.cleanTail = savingTail;
+  }
+  /**
+   * @return The layout of the file written by the last save or null if the list wasn't saved in a way which allows
+   *         reusing it.
+   */
+  public SaveSnapshot getSnapshot ()
+  {
+    return snapshot;
+  }
+  /**
+   * @return The number of leading tracks which are still the same as in the last save.
+   */
+  public int getCleanHead ()
+  {
+    return cleanHead;
+  }
+  /**
+   * @return The number of trailing tracks which are still the same as in the last save. Head and tail overlap if
+   *         nothing changed.
+   */
+  public int getCleanTail ()
+  {
+    return cleanTail;
+  }
   /**
    * @return An instance of Iterator<TrackFile> of the ArrayList contained in this class. This is needed to be able to 
    * "foreach" the TrackFileList.
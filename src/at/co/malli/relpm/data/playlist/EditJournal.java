@@ -0,0 +1,705 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.lib.data.DirectoryListingCache;
+import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import at.co.malli.relpm.data.audiofiles.TrackFileList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Instances of this class append every edit of the opened list to a small binary file in the user's directory, so
+ * unsaved changes survive a crash. The journal starts with a header naming the playlist file the edits are based on,
+ * which is the file that was opened or saved last, and the tracks of it which weren't found and are therefore missing
+ * in the list. Each edit is one record framed by its length and a CRC32, so a
+ * record torn by a crash is detected and ignored on recovery. Records are forced onto the disk by a background thread
+ * right after they were written. Many edits in a row are forced together.
+ * @author Dietmar Malli
+ */
+public class EditJournal implements Closeable
+{
+  private static final Logger logger = LogManager.getLogger(EditJournal.class.getName());
+
+  public static final String journalFilename = System.getProperty("user.home")+"/.RelPM/RelPM-journal.bin";
+  private static final int FILE_MAGIC = 0x52504d4a; //"RPMJ"
+  private static final int FILE_VERSION = 1;
+  private static final int RECORD_HEADER_LENGTH = 8; //Length and CRC32 of the payload...
+  private static final byte RECORD_ADD = 1;
+  private static final byte RECORD_REMOVE = 2;
+  private static final byte RECORD_MOVE = 3;
+  private static final int FLAG_ARTIST = 0x1;
+  private static final int FLAG_TITLE = 0x2;
+
+  private static volatile ExecutorService forceExecutor = null;
+
+  private volatile FileChannel channel; //Null after an error or close()...
+  private int recordCount;
+  private long headerLength;
+  private File base;
+  private long baseLength;
+  private long baseLastModified;
+  private boolean saveTarget;
+  private int[] omitted = new int[0];
+  private final AtomicBoolean forcePending = new AtomicBoolean(false);
+
+
+  private EditJournal (FileChannel channel, int recordCount, long headerLength)
+  {
+    this.channel = channel;
+    this.recordCount = recordCount;
+    this.headerLength = headerLength;
+  }
+
+  /**
+   * Starts a new, empty journal. An existing one gets replaced.
+   * @param base The playlist file the following edits are based on.
+   * @param saveTarget True if base is also the file the list gets saved to.
+   * @return The journal.
+   * @throws IOException if the journal can't be written.
+   */
+  public static EditJournal start (File base, boolean saveTarget) throws IOException
+  {
+    FileChannel channel = FileChannel.open(new File(journalFilename).toPath(), StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ, StandardOpenOption.WRITE);
+    EditJournal journal = new EditJournal(channel, 0, 0); //The header is written by reset()...
+    try
+    {
+      journal.reset(base, saveTarget);
+    }
+    catch (IOException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+    return journal;
+  }
+
+  /**
+   * Drops all records and bases the journal on another file. This is called after the list was saved.
+   * @param base The playlist file the following edits are based on.
+   * @param saveTarget True if base is also the file the list gets saved to.
+   * @throws IOException if the journal can't be written.
+   */
+  public synchronized void reset (File base, boolean saveTarget) throws IOException
+  {
+    if(channel == null)
+      return;
+    setBase(base, saveTarget);
+    omitted = new int[0];
+    byte[] header = header();
+    channel.truncate(0);
+    writeFully(channel, ByteBuffer.wrap(header), 0);
+    channel.force(true);
+    recordCount = 0;
+    headerLength = header.length;
+  }
+
+  /**
+   * Bases the journal on a file which was just saved. The records written after the save took the list aren't
+   * contained in the file, so they are kept. The new journal is written next to the old one and moved over it, so a
+   * crash in between leaves one of both complete.
+   * @param base The saved playlist file.
+   * @param saveTarget True if base is also the file the list gets saved to.
+   * @param saved The number of records which were recorded when the save took the list.
+   * @throws IOException if the journal can't be written.
+   */
+  public synchronized void rebase (File base, boolean saveTarget, int saved) throws IOException
+  {
+    if(channel == null)
+      return;
+    setBase(base, saveTarget);
+    omitted = new int[0]; //The saved file contains the list as it is...
+    rewrite(saved);
+  }
+
+  /**
+   * Notes the tracks of the base which weren't found when it was read. They aren't in the list, so the positions in
+   * the records only fit a list which lacks the same tracks.
+   * @param omitted For each omitted track the number of found tracks in front of it, in the order of the base.
+   * @throws IOException if the journal can't be written.
+   */
+  public synchronized void setOmitted (int[] omitted) throws IOException
+  {
+    if(channel == null)
+      return;
+    this.omitted = omitted.clone();
+    rewrite(0);
+  }
+
+  /**
+   * Writes the journal with the current header. The new journal is written next to the old one and moved over it.
+   * @param skipped The number of leading records which are left out.
+   * @throws IOException if the journal can't be written.
+   */
+  private void rewrite (int skipped) throws IOException
+  {
+    long from = headerLength;
+    ByteBuffer length = ByteBuffer.allocate(4);
+    for(int i = 0; i < skipped; i++)
+    {
+      length.clear();
+      readFully(channel, length, from);
+      from += RECORD_HEADER_LENGTH + length.getInt(0);
+    }
+    ByteBuffer records = ByteBuffer.allocate((int) (channel.size() - from));
+    readFully(channel, records, from);
+    records.flip();
+    byte[] header = header();
+    File file = new File(journalFilename);
+    File tempFile = new File(journalFilename + ".tmp");
+    try (FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      writeFully(out, ByteBuffer.wrap(header), 0);
+      writeFully(out, records, header.length);
+      out.force(true);
+    }
+    channel.close(); //Windows doesn't replace an opened file...
+    channel = null;
+    try
+    {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally
+    {
+      //The old journal if moving failed... Read by the next rebase().
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    recordCount -= skipped;
+    headerLength = header.length;
+  }
+
+  /**
+   * @param base The playlist file the following edits are based on. Its size and modification time are taken now.
+   * @param saveTarget True if base is also the file the list gets saved to.
+   */
+  private void setBase (File base, boolean saveTarget)
+  {
+    this.base = base;
+    this.baseLength = base.length();
+    this.baseLastModified = base.lastModified();
+    this.saveTarget = saveTarget;
+  }
+
+  /**
+   * @return The header of the journal.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  private byte[] header () throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(FILE_MAGIC);
+    out.writeInt(FILE_VERSION);
+    out.writeUTF(base.getAbsolutePath());
+    out.writeLong(baseLength);
+    out.writeLong(baseLastModified);
+    out.writeBoolean(saveTarget);
+    out.writeInt(omitted.length);
+    for(int index : omitted)
+      out.writeInt(index);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Records the insertion of tracks.
+   * @param index The position of the first inserted track.
+   * @param tracks The inserted tracks.
+   */
+  public void recordAdd (int index, List<TrackFile> tracks)
+  {
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = beginRecord(bytes, RECORD_ADD);
+      out.writeInt(index);
+      out.writeInt(tracks.size());
+      for(TrackFile track : tracks)
+      {
+        out.writeUTF(track.getAbsolutePath().getAbsolutePath());
+        out.writeInt(track.getLengthSeconds());
+        String artist = track.getArtist();
+        String title = track.getTitle();
+        out.writeByte((artist != null ? FLAG_ARTIST : 0) | (title != null ? FLAG_TITLE : 0));
+        if(artist != null)
+          out.writeUTF(artist);
+        if(title != null)
+          out.writeUTF(title);
+      }
+      endRecord(bytes);
+    }
+    catch (IOException ex)
+    {
+      failed(ex);
+    }
+  }
+
+  /**
+   * Records the removal of tracks.
+   * @param index The position of the first removed track.
+   * @param count The number of consecutive tracks removed.
+   */
+  public void recordRemove (int index, int count)
+  {
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = beginRecord(bytes, RECORD_REMOVE);
+      out.writeInt(index);
+      out.writeInt(count);
+      endRecord(bytes);
+    }
+    catch (IOException ex)
+    {
+      failed(ex);
+    }
+  }
+
+  /**
+   * Records moving a selection of tracks. The selected tracks keep their order and are inserted before the first
+   * unselected track at or behind target, or at the end of the list if there is none.
+   * @param selection The positions of the moved tracks in ascending order.
+   * @param target The drop position counted in the list before the move.
+   */
+  public void recordMove (int[] selection, int target)
+  {
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = beginRecord(bytes, RECORD_MOVE);
+      out.writeInt(target);
+      out.writeInt(selection.length);
+      for(int index : selection)
+        out.writeInt(index);
+      endRecord(bytes);
+    }
+    catch (IOException ex)
+    {
+      failed(ex);
+    }
+  }
+
+  private static DataOutputStream beginRecord (ByteArrayOutputStream bytes, byte type) throws IOException
+  {
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0); //Length... Filled in by endRecord().
+    out.writeInt(0); //CRC32...
+    out.writeByte(type);
+    return out;
+  }
+
+  private synchronized void endRecord (ByteArrayOutputStream bytes) throws IOException
+  {
+    if(channel == null)
+      return;
+    ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), RECORD_HEADER_LENGTH, record.limit() - RECORD_HEADER_LENGTH);
+    record.putInt(0, record.limit() - RECORD_HEADER_LENGTH);
+    record.putInt(4, (int) crc.getValue());
+    writeFully(channel, record, channel.size());
+    recordCount++;
+    scheduleForce();
+  }
+
+  /**
+   * Lets the background thread force the written records onto the disk unless it is about to do so anyway.
+   */
+  private void scheduleForce ()
+  {
+    if(!forcePending.compareAndSet(false, true))
+      return;
+    getForceExecutor().submit(new Runnable()
+    {
+      @Override
+      public void run ()
+      {
+        forcePending.set(false); //Records written from now on need another force...
+        synchronized(EditJournal.this) //rewrite() and close() swap the channel...
+        {
+          if(channel == null)
+            return;
+          try
+          {
+            channel.force(false);
+          }
+          catch (IOException ex)
+          {
+            logger.error("Could not force the edit journal onto the disk: " + ex.getMessage());
+          }
+        }
+      }
+    });
+  }
+
+  private static ExecutorService getForceExecutor ()
+  {
+    if(forceExecutor == null)
+    {
+      synchronized(EditJournal.class)
+      {
+        if(forceExecutor == null)
+        {
+          forceExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+          {
+            @Override
+            public Thread newThread (Runnable r)
+            {
+              Thread t = new Thread(r, "EditJournal-Force");
+              t.setDaemon(true); //Must never keep the application alive...
+              return t;
+            }
+          });
+        }
+      }
+    }
+    return forceExecutor;
+  }
+
+  /**
+   * Stops journaling after an I/O error. Editing must go on, only the crash safety is lost.
+   */
+  private synchronized void failed (IOException ex)
+  {
+    logger.error("Could not write the edit journal. Unsaved changes won't survive a crash: " + ex.getMessage());
+    close();
+  }
+
+  private static void writeFully (FileChannel channel, ByteBuffer buf, long position) throws IOException
+  {
+    while(buf.hasRemaining())
+      position += channel.write(buf, position);
+  }
+
+  private static void readFully (FileChannel channel, ByteBuffer buf, long position) throws IOException
+  {
+    while(buf.hasRemaining())
+    {
+      int read = channel.read(buf, position);
+      if(read < 0)
+        throw new IOException("The edit journal is shorter than expected");
+      position += read;
+    }
+  }
+
+  /**
+   * @return The number of edits recorded since the journal was started or reset.
+   */
+  public synchronized int getRecordCount ()
+  {
+    return recordCount;
+  }
+
+  /**
+   * Closes the journal file. It stays on the disk and is offered for recovery on the next start.
+   */
+  @Override
+  public synchronized void close ()
+  {
+    if(channel == null)
+      return;
+    try
+    {
+      channel.close();
+    }
+    catch (IOException ex)
+    {
+      logger.error("Could not close the edit journal: " + ex.getMessage());
+    }
+    channel = null;
+  }
+
+  /**
+   * Closes and deletes the journal because its edits were saved or the user dropped them.
+   */
+  public synchronized void discard ()
+  {
+    close();
+    delete();
+  }
+
+  /**
+   * Deletes the journal file if there is one.
+   */
+  public static void delete ()
+  {
+    File file = new File(journalFilename);
+    if(file.exists() && !file.delete())
+      logger.error("Could not delete " + journalFilename);
+  }
+
+  /**
+   * Reads the journal left behind by the last run.
+   * @return The recoverable edits or null if there is no journal or it doesn't contain a single complete record.
+   */
+  public static Recovery findRecovery ()
+  {
+    File file = new File(journalFilename);
+    if(!file.isFile())
+      return null;
+    try
+    {
+      Recovery recovery = new Recovery(file);
+      if(recovery.getRecordCount() == 0)
+      {
+        delete(); //Nothing happened after the last save...
+        return null;
+      }
+      return recovery;
+    }
+    catch (IOException ex)
+    {
+      logger.warn("Could not read " + journalFilename + ": " + ex.getMessage());
+      delete();
+      return null;
+    }
+  }
+
+
+  /**
+   * Instances of this class hold the edits of a journal left behind by a crash.
+   */
+  public static class Recovery
+  {
+    private final File base;
+    private final long baseLength;
+    private final long baseLastModified;
+    private final boolean saveTarget;
+    private final int[] omitted;
+    private final ArrayList<byte[]> records = new ArrayList<>();
+    private final long[] recordEnds; //recordEnds[i] is the length of the journal with the first i records...
+
+    private Recovery (File file) throws IOException
+    {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+      {
+        ByteBuffer content = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+        while(content.hasRemaining() && channel.read(content) > 0)
+        {
+        }
+        content.flip();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content.array(), 0, content.limit()));
+        if(in.readInt() != FILE_MAGIC)
+          throw new IOException("Unknown journal format");
+        int version = in.readInt();
+        if(version != FILE_VERSION)
+          throw new IOException("Unknown journal version " + version);
+        base = new File(in.readUTF());
+        baseLength = in.readLong();
+        baseLastModified = in.readLong();
+        saveTarget = in.readBoolean();
+        omitted = new int[in.readInt()];
+        for(int i = 0; i < omitted.length; i++)
+          omitted[i] = in.readInt();
+        int pos = content.limit() - in.available();
+        ArrayList<Long> ends = new ArrayList<>();
+        ends.add((long) pos);
+        while(pos + RECORD_HEADER_LENGTH <= content.limit())
+        {
+          int length = content.getInt(pos);
+          int crc = content.getInt(pos + 4);
+          if(length <= 0 || pos + RECORD_HEADER_LENGTH + length > content.limit())
+            break; //Torn by a crash...
+          CRC32 check = new CRC32();
+          check.update(content.array(), pos + RECORD_HEADER_LENGTH, length);
+          if((int) check.getValue() != crc)
+            break;
+          byte[] record = new byte[length];
+          System.arraycopy(content.array(), pos + RECORD_HEADER_LENGTH, record, 0, length);
+          records.add(record);
+          pos += RECORD_HEADER_LENGTH + length;
+          ends.add((long) pos);
+        }
+        recordEnds = new long[ends.size()];
+        for(int i = 0; i < recordEnds.length; i++)
+          recordEnds[i] = ends.get(i);
+      }
+    }
+
+    /**
+     * @return The playlist file the edits are based on.
+     */
+    public File getBase ()
+    {
+      return base;
+    }
+
+    /**
+     * @return True if the base was also the file the list was saved to.
+     */
+    public boolean isSaveTarget ()
+    {
+      return saveTarget;
+    }
+
+    /**
+     * @return For each track of the base which wasn't found when the edits were made, the number of found tracks in
+     *         front of it. The edits only fit a list which lacks the same tracks.
+     */
+    public int[] getOmitted ()
+    {
+      return omitted.clone();
+    }
+
+    /**
+     * @return The number of complete records.
+     */
+    public int getRecordCount ()
+    {
+      return records.size();
+    }
+
+    /**
+     * @return True if the base file still looks like it did when the journal was started. Otherwise the positions in
+     *         the records don't fit anymore.
+     */
+    public boolean isBaseUnchanged ()
+    {
+      return base.isFile() && base.length() == baseLength && base.lastModified() == baseLastModified;
+    }
+
+    /**
+     * Applies the edits to the list parsed from the base file.
+     * @param list The list parsed from getBase().
+     * @return The number of records which were applied. It is smaller than getRecordCount() if a record doesn't fit
+     *         the list or an inserted file doesn't exist anymore. The following records are skipped in this case.
+     */
+    public int replay (TrackFileList list)
+    {
+      int applied = 0;
+      for(byte[] record : records)
+      {
+        try
+        {
+          apply(list, new DataInputStream(new ByteArrayInputStream(record)));
+        }
+        catch (IOException | PathResolutionException | IndexOutOfBoundsException ex)
+        {
+          logger.warn("Could not replay edit " + (applied + 1) + " of " + records.size() + ": " + ex.getMessage());
+          break;
+        }
+        applied++;
+      }
+      return applied;
+    }
+
+    private static void apply (TrackFileList list, DataInputStream in) throws IOException, PathResolutionException
+    {
+      byte type = in.readByte();
+      switch(type)
+      {
+        case RECORD_ADD:
+        {
+          int index = in.readInt();
+          int count = in.readInt();
+          if(index < 0 || index > list.getSize())
+            throw new IndexOutOfBoundsException("Insert position " + index + " is outside of the list");
+          ArrayList<TrackFile> elements = new ArrayList<>(count);
+          for(int i = 0; i < count; i++)
+          {
+            String path = in.readUTF();
+            int lengthSeconds = in.readInt();
+            int flags = in.readByte();
+            String artist = ((flags & FLAG_ARTIST) != 0 ? in.readUTF() : null);
+            String title = ((flags & FLAG_TITLE) != 0 ? in.readUTF() : null);
+            TrackFile track = new TrackFile(list.getPlaylist(), path, DirectoryListingCache.getInstance());
+            track.setLengthSeconds(lengthSeconds);
+            track.setArtist(artist);
+            track.setTitle(title);
+            elements.add(track);
+          }
+          list.add(index, elements);
+        }
+        break;
+        case RECORD_REMOVE:
+        {
+          int index = in.readInt();
+          int count = in.readInt();
+          if(index < 0 || count < 0 || index + count > list.getSize())
+            throw new IndexOutOfBoundsException("Removed tracks " + index + "+" + count + " are outside of the list");
+          int[] selection = new int[count];
+          for(int i = 0; i < selection.length; i++)
+            selection[i] = index + i;
+          list.removeIndices(selection);
+        }
+        break;
+        case RECORD_MOVE:
+        {
+          int target = in.readInt();
+          int count = in.readInt();
+          if(target < 0 || target > list.getSize() || count < 0 || count > list.getSize())
+            throw new IndexOutOfBoundsException("Move of " + count + " tracks to " + target + " doesn't fit the list");
+          int[] selection = new int[count];
+          for(int i = 0; i < selection.length; i++)
+          {
+            selection[i] = in.readInt();
+            if(selection[i] >= list.getSize() || selection[i] < (i == 0 ? 0 : selection[i - 1] + 1))
+              throw new IndexOutOfBoundsException("Moved track " + selection[i] + " is outside of the list");
+          }
+          list.move(selection, target);
+        }
+        break;
+        default:
+          throw new IOException("Unknown record type " + type);
+      }
+    }
+
+    /**
+     * Continues the journal after the edits were replayed, so they still survive another crash until the list is
+     * saved. Records which weren't replayed and a torn record at the end are cut off.
+     * @param replayed The number of records replay() applied.
+     * @return The journal to record further edits in.
+     * @throws IOException if the journal can't be opened.
+     */
+    public EditJournal resume (int replayed) throws IOException
+    {
+      FileChannel channel = FileChannel.open(new File(journalFilename).toPath(), StandardOpenOption.READ,
+                                             StandardOpenOption.WRITE);
+      channel.truncate(recordEnds[replayed]);
+      EditJournal journal = new EditJournal(channel, replayed, recordEnds[0]);
+      journal.base = base;
+      journal.baseLength = baseLength;
+      journal.baseLastModified = baseLastModified;
+      journal.saveTarget = saveTarget;
+      journal.omitted = omitted;
+      return journal;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.data.ResourceUtils;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * Instances of this class write the same lines as M3ULineWriter, but if they write into a PlaylistChannelWriter the
+ * lines of a track are put into one reused CharBuffer and encoded directly into a pool of direct ByteBuffers. The
+ * encoded range of each buffer is queued in the PlaylistChannelWriter and grown with every track, so the channel
+ * writer always knows the exact position and writes the queued ranges with one gathering write. The pool is reused
+ * after the queue was flushed, so no strings or byte arrays are created per track.
+ * Other Appendables and charsets in which line breaks aren't plain CR/LF bytes are handled by M3ULineWriter.
+ * @author Dietmar Malli
+ */
+public class GatheringM3ULineWriter extends M3ULineWriter
+{
+  public static final int CHUNK_SIZE = 64 * 1024;
+  public static final int CHUNK_COUNT = 16;
+
+  private final ByteBuffer[] chunks = new ByteBuffer[CHUNK_COUNT];
+  private int chunk = 0;
+  private ByteBuffer range = null; //The range of the current chunk queued in the writer...
+  private PlaylistChannelWriter lastWriter = null;
+  private CharsetEncoder encoder = null;
+  private CharBuffer chars = CharBuffer.allocate(1024);
+
+  /**
+   * Writes an #EXTINF: line if the info is available and a line with the relative path in every case.
+   * @param w The stream into which it should be written.
+   * @param playlist The playlist to write. This is needed for relative path calculation.
+   * @param track The file containing the information to write.
+   * @throws java.io.IOException If an error occured during writing to the stream.
+   */
+  @Override
+  public void writeTrackFile (Appendable w, File playlist, TrackFile track) throws IOException, ResourceUtils.PathResolutionException
+  {
+    if(!(w instanceof PlaylistChannelWriter) || !MappedLineSource.isSupported(((PlaylistChannelWriter) w).getCharset()))
+    {
+      super.writeTrackFile(w, playlist, track);
+      return;
+    }
+    PlaylistChannelWriter writer = (PlaylistChannelWriter) w;
+    attach(writer);
+    fillChars(playlist, track);
+
+    ByteBuffer buf = current();
+    int start = buf.position();
+    encoder.reset();
+    CoderResult result = encoder.encode(chars, buf, true);
+    if(!result.isOverflow())
+      result = encoder.flush(buf);
+    if(result.isOverflow()) //The chunk is full... Try again in the next one.
+    {
+      buf.position(start);
+      buf = next(writer);
+      start = buf.position();
+      chars.rewind();
+      encoder.reset();
+      result = encoder.encode(chars, buf, true);
+      if(!result.isOverflow())
+        result = encoder.flush(buf);
+      if(result.isOverflow()) //Longer than a whole chunk...
+      {
+        buf.position(start);
+        super.writeTrackFile(w, playlist, track);
+        return;
+      }
+    }
+    if(range == null)
+    {
+      range = buf.duplicate();
+      range.position(start);
+    }
+    range.limit(buf.position());
+    writer.write(range);
+  }
+
+  /**
+   * Puts the lines of a track into chars without creating intermediate strings.
+   */
+  private void fillChars (File playlist, TrackFile track) throws ResourceUtils.PathResolutionException
+  {
+    String path = getResolver(playlist).relativize(track);
+    int lengthSeconds = track.getLengthSeconds();
+    String artist = track.getArtist();
+    String title = track.getTitle();
+    boolean extinf = lengthSeconds != -1 && artist != null && title != null;
+    int needed = path.length() + 4;
+    if(extinf)
+      needed += 8 + 11 + 1 + artist.length() + 3 + title.length() + 2;
+    if(chars.capacity() < needed)
+      chars = CharBuffer.allocate(Math.max(needed, chars.capacity() * 2));
+    chars.clear();
+    if(extinf)
+    {
+      chars.put("#EXTINF:");
+      putInt(lengthSeconds);
+      chars.put(',').put(artist).put(" - ").put(title).put("\r\n");
+    }
+    chars.put(path).put("\r\n\r\n");
+    chars.flip();
+  }
+
+  private void putInt (int value)
+  {
+    if(value < 0)
+    {
+      chars.put('-');
+      if(value == Integer.MIN_VALUE)
+      {
+        chars.put("2147483648");
+        return;
+      }
+      value = -value;
+    }
+    int divisor = 1;
+    while(value / divisor >= 10)
+      divisor *= 10;
+    for(; divisor > 0; divisor /= 10)
+      chars.put((char) ('0' + (value / divisor) % 10));
+  }
+
+  /**
+   * Starts using the pool for another writer. The queue of the previous one is flushed first, because its ranges
+   * point into the pool.
+   */
+  private void attach (PlaylistChannelWriter writer) throws IOException
+  {
+    if(writer == lastWriter)
+      return;
+    if(lastWriter != null)
+      lastWriter.flushGathered();
+    lastWriter = writer;
+    Charset charset = writer.getCharset();
+    if(encoder == null || !encoder.charset().equals(charset))
+      encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                                    .onUnmappableCharacter(CodingErrorAction.REPLACE); //Like OutputStreamWriter...
+    rewind();
+  }
+
+  private ByteBuffer current ()
+  {
+    if(chunks[chunk] == null)
+      chunks[chunk] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    return chunks[chunk];
+  }
+
+  /**
+   * Moves on to the next chunk. If all of them were used, the queue of the writer is flushed and the pool starts over.
+   */
+  private ByteBuffer next (PlaylistChannelWriter writer) throws IOException
+  {
+    range = null;
+    if(chunk + 1 < chunks.length)
+      chunk++;
+    else
+    {
+      writer.flushGathered();
+      rewind();
+    }
+    return current();
+  }
+
+  private void rewind ()
+  {
+    for(ByteBuffer buf : chunks)
+    {
+      if(buf != null)
+        buf.clear();
+    }
+    chunk = 0;
+    range = null;
+  }
+}
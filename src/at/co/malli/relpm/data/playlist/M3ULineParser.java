@@ -17,8 +17,10 @@
  */
 package at.co.malli.relpm.data.playlist;
 
+import at.co.malli.lib.data.DirectoryListingCache;
 import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
 import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.TagReadPool;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -33,16 +35,58 @@ public class M3ULineParser implements PlaylistLineParser
   private final ArrayList<TrackFile> tracks = new ArrayList<>();
   private final File playlist;
   private final String[] linePair;
+  private final TagReadPool tagPool;
+  private final boolean deferTags;
+  private final DirectoryListingCache listing; //Every directory is read only once, even across playlists...
 
   /**
    * @param currentPlaylist The playlist which will be parsed.
    */
   public M3ULineParser (File currentPlaylist)
+  {
+    this(currentPlaylist, null);
+  }
+  
+  /**
+   * @param currentPlaylist The playlist which will be parsed.
+   * @param tagPool The pool to which the tag reading of the found tracks is handed over or null if the tags should be
+   *                read right within addLine().
+   */
+  public M3ULineParser (File currentPlaylist, TagReadPool tagPool)
+  {
+    this(currentPlaylist, tagPool, false);
+  }
+  
+  /**
+   * @param currentPlaylist The playlist which will be parsed.
+   * @param tagPool The pool to which the tag reading of the found tracks is handed over or null if the tags should be
+   *                read right within addLine().
+   * @param deferTags True if the tags shouldn't be read at all while parsing. The tracks are only marked with
+   *                  TrackFile.deferTags() then and the pool is unused.
+   */
+  public M3ULineParser (File currentPlaylist, TagReadPool tagPool, boolean deferTags)
   {
     this.playlist = currentPlaylist;
+    this.tagPool = tagPool;
+    this.deferTags = deferTags;
+    this.listing = DirectoryListingCache.getInstance();
     linePair = new String[2];
   }
   
+  /**
+   * Reads the tags of the track from the file itself. This is either done right away, by the pool or later.
+   * @param track The track whose tags should be read.
+   */
+  private void readTags(TrackFile track)
+  {
+    if(deferTags)
+      track.deferTags();
+    else if(tagPool != null)
+      tagPool.submit(track);
+    else
+      track.parseTagsFromFile();
+  }
+  
   /**
    * Reads the tags from a supplied EXTINF line from
    * @param line
@@ -52,9 +96,19 @@ public class M3ULineParser implements PlaylistLineParser
   {
     if(line==null)
     {
-      track.parseTagsFromFile();
+      readTags(track);
       return;
     }
+    setEXTINFTags(line, track);
+  }
+  
+  /**
+   * Sets the tags of a track to the ones of an EXTINF line.
+   * @param line The EXTINF line.
+   * @param track The track whose tags should be set.
+   */
+  static void setEXTINFTags (String line, TrackFile track)
+  {
     String info = line.replaceFirst("#EXTINF:","");
     String[] split = info.split(",");
     track.setLengthSeconds(Integer.valueOf(split[0]));
@@ -85,11 +139,11 @@ public class M3ULineParser implements PlaylistLineParser
     {
       linePair[1]=m3uLine;
       
-      TrackFile currentTrack = new TrackFile(playlist, linePair[1]); //File not Found Exception could occure here...
+      TrackFile currentTrack = new TrackFile(playlist, linePair[1], listing); //File not Found Exception could occure here...
       if(SettingsProvider.getInstance().getBoolean("data.import.parseM3Utags"))
         parseEXTINF(linePair[0],currentTrack);
       else
-        currentTrack.parseTagsFromFile();
+        readTags(currentTrack);
       tracks.add(currentTrack);
       linePair[0]=null;
       linePair[1]=null;
@@ -124,13 +178,26 @@ public class M3ULineParser implements PlaylistLineParser
       if(SettingsProvider.getInstance().getBoolean("data.import.parseM3Utags"))
         parseEXTINF(linePair[0],currentTrack);
       else
-        currentTrack.parseTagsFromFile();
+        readTags(currentTrack);
       tracks.add(currentTrack);
       linePair[0]=null;
       linePair[1]=null;
     }
   }
   
+  /**
+   * Skips the track of the line which threw a FileNotFoundException in addLine(). Its EXTINF line is kept with it.
+   * @return The skipped track. It belongs in front of the track which will be parsed next.
+   */
+  @Override
+  public MissingTrack skipMissing ()
+  {
+    MissingTrack missing = new MissingTrack(playlist, linePair[1], linePair[0], tracks.size());
+    linePair[0]=null;
+    linePair[1]=null;
+    return missing;
+  }
+  
   /**
    * @return The ArrayList containing the TrackFile objects parsed from the playlist.
    */
@@ -17,10 +17,9 @@
  */
 package at.co.malli.relpm.data.playlist;
 
-import at.co.malli.lib.data.FileHelpers;
+import at.co.malli.relpm.data.RelativePathResolver;
 import at.co.malli.relpm.data.ResourceUtils;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 
@@ -29,6 +28,8 @@ import java.io.IOException;
  */
 public class M3ULineWriter implements PlaylistLineWriter
 {
+  private RelativePathResolver resolver = null;
+  
   /**
    * Writes an #EXTINF: line if the info is available and a line with the relative path in every case.
    * @param w The stream into which it should be written.
@@ -38,20 +39,26 @@ public class M3ULineWriter implements PlaylistLineWriter
    * @throws java.io.IOException If an error occured during writing to the stream.
    */
   @Override
-  public void writeTrackFile (BufferedWriter w, File playlist, TrackFile track) throws IOException, ResourceUtils.PathResolutionException
+  public void writeTrackFile (Appendable w, File playlist, TrackFile track) throws IOException, ResourceUtils.PathResolutionException
   {
     int lengthSeconds = track.getLengthSeconds();
     String artist = track.getArtist();
     String title = track.getTitle();
     if(lengthSeconds != -1 && artist != null && title != null)
       w.append("#EXTINF:"+track.getLengthSeconds()+","+track.getArtist()+" - "+track.getTitle()+"\r\n");
-    if(playlist.getAbsolutePath().equals(track.getParsedPlaylistFile().getAbsolutePath()))
-      w.append(track.getRelativePath()+"\r\n\r\n"); //Change nothing.. It's the same file object which was read...
-    else
-    {
-      String relative = FileHelpers.calculateRelativePath(playlist.getParentFile(), track.getAbsolutePath());
-      w.append(relative+"\r\n\r\n");
-    }
+    w.append(getResolver(playlist).relativize(track)+"\r\n\r\n"); //Unchanged if it was read from the same directory...
+  }
+  
+  /**
+   * @param playlist The playlist to write.
+   * @return A resolver for the directory of the playlist. It is kept as long as the same directory is written.
+   */
+  protected RelativePathResolver getResolver (File playlist)
+  {
+    File directory = playlist.getAbsoluteFile().getParentFile();
+    if(resolver == null || !resolver.getDirectory().equals(directory))
+      resolver = new RelativePathResolver(directory);
+    return resolver;
   }
 
   /**
@@ -62,7 +69,7 @@ public class M3ULineWriter implements PlaylistLineWriter
    * @throws java.io.IOException If an error occured during writing to the stream.
    */
   @Override
-  public void writeIntro (BufferedWriter w, File playlist, String encoding) throws IOException
+  public void writeIntro (Appendable w, File playlist, String encoding) throws IOException
   {
     w.append("#EXTM3U\r\n");
   }
@@ -75,7 +82,7 @@ public class M3ULineWriter implements PlaylistLineWriter
    * @throws java.io.IOException If an error occured during writing to the stream.
    */
   @Override
-  public void writeOutro (BufferedWriter w, File playlist, String encoding) throws IOException
+  public void writeOutro (Appendable w, File playlist, String encoding) throws IOException
   {
   }
   
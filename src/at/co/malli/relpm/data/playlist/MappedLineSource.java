@@ -0,0 +1,151 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Instances of this class read the lines of a playlist from a memory mapped file. The lines are split on the raw CR and
+ * LF bytes and only the bytes of each line are decoded, using one CharsetDecoder and one CharBuffer for the whole
+ * file. This is only possible for charsets in which CR and LF are encoded as the single ASCII bytes and never occur
+ * inside another character. Use isSupported() to check this.
+ * @author Dietmar Malli
+ */
+public class MappedLineSource implements PlaylistLineSource
+{
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+
+  private final FileChannel channel;
+  private final MappedByteBuffer map;
+  private final CharsetDecoder decoder;
+  private final int length;
+  private CharBuffer chars;
+  private int pos;
+
+
+  /**
+   * @param file The playlist file to read. It must not be bigger than Integer.MAX_VALUE bytes.
+   * @param charset The charset used to decode the lines. isSupported(charset) must be true.
+   * @param bomLength The number of bytes of a byte order mark which are skipped before decoding starts.
+   * @throws IOException if an I/O-Exception occurs or the file is too big to be mapped at once.
+   */
+  public MappedLineSource (File file, Charset charset, int bomLength) throws IOException
+  {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try
+    {
+      long size = channel.size();
+      if(size > Integer.MAX_VALUE)
+        throw new IOException("The playlist is too big to be mapped: " + file);
+      this.length = (int) size;
+      this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+    catch (IOException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+    this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                                       .onUnmappableCharacter(CodingErrorAction.REPLACE); //Like InputStreamReader...
+    this.chars = CharBuffer.allocate(256);
+    this.pos = Math.min(bomLength, length);
+  }
+
+  /**
+   * @param charset The charset to check.
+   * @return True if CR and LF are encoded as single bytes in this charset, which is the case for UTF-8 and the ASCII
+   *         based single byte charsets, but not for UTF-16.
+   */
+  public static boolean isSupported (Charset charset)
+  {
+    if(!charset.canEncode())
+      return false;
+    return Arrays.equals("\r\n".getBytes(charset), new byte[] {CR, LF});
+  }
+
+  @Override
+  public String readLine ()
+  {
+    if(pos >= length)
+      return null;
+    int start = pos;
+    int end = start;
+    while(end < length)
+    {
+      byte b = map.get(end);
+      if(b == LF || b == CR)
+        break;
+      end++;
+    }
+    pos = end;
+    if(pos < length)
+    {
+      if(map.get(pos) == CR && pos + 1 < length && map.get(pos + 1) == LF)
+        pos += 2;
+      else
+        pos++;
+    }
+    return decode(start, end);
+  }
+
+  private String decode (int start, int end)
+  {
+    int needed = (int) ((end - start) * (double) decoder.maxCharsPerByte()) + 1;
+    if(chars.capacity() < needed)
+      chars = CharBuffer.allocate(Math.max(needed, chars.capacity() * 2));
+    ByteBuffer slice = map.duplicate();
+    slice.limit(end);
+    slice.position(start);
+    chars.clear();
+    decoder.reset();
+    decoder.decode(slice, chars, true);
+    decoder.flush(chars);
+    chars.flip();
+    return chars.toString();
+  }
+
+  @Override
+  public long getBytesRead ()
+  {
+    return pos;
+  }
+
+  @Override
+  public long getLength ()
+  {
+    return length;
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    channel.close(); //The mapping itself is released by the garbage collector...
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
+import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+
+
+/**
+ * A track of a playlist whose file wasn't found while parsing. The parser skips it and goes on, so the user can relink
+ * all of them at once afterwards instead of being asked for every single one.
+ * @author Dietmar Malli
+ */
+public class MissingTrack
+{
+  private final File playlist;
+  private final String path;      //As written in the playlist...
+  private final String extinf;    //The EXTINF line in front of it or null...
+  private final int index;        //Number of found tracks in front of it...
+  private TrackFile anchor = null; //The found track which followed it or null if it was at the end...
+  private TrackFile resolved = null;
+
+  /**
+   * @param playlist The playlist which is parsed.
+   * @param path The path of the track as written in the playlist.
+   * @param extinf The EXTINF line which belongs to the track or null.
+   * @param index The number of tracks which were found in front of it.
+   */
+  public MissingTrack (File playlist, String path, String extinf, int index)
+  {
+    this.playlist = playlist;
+    this.path = path;
+    this.extinf = extinf;
+    this.index = index;
+  }
+
+  /**
+   * Remembers the track the missing one belongs in front of. Called once the whole playlist was parsed.
+   * @param tracks The found tracks of the playlist.
+   */
+  void setAnchor (List<TrackFile> tracks)
+  {
+    anchor = (index < tracks.size() ? tracks.get(index) : null);
+  }
+
+  /**
+   * Creates the track from the file it was found at. The tags are taken from the EXTINF line like while parsing or
+   * read from the file.
+   * @param audioFile The file the track was found at. It must have the same name as the missing one.
+   * @return The relinked track, which is also returned by getResolved() afterwards.
+   * @throws FileNotFoundException if audioFile doesn't exist.
+   * @throws PathResolutionException if audioFile can't be relativized to the playlist.
+   */
+  public TrackFile relink (File audioFile) throws FileNotFoundException, PathResolutionException
+  {
+    TrackFile track = new TrackFile(playlist, path, audioFile);
+    if(extinf != null && SettingsProvider.getInstance().getBoolean("data.import.parseM3Utags"))
+      M3ULineParser.setEXTINFTags(extinf, track);
+    else
+      track.parseTagsFromFile();
+    resolved = track;
+    return track;
+  }
+
+  /**
+   * @return The file name of the track without the directory it was expected in.
+   */
+  public String getName ()
+  {
+    return new File(path).getName();
+  }
+
+  /**
+   * @return The file the playlist pointed to.
+   */
+  public File getFormerFile ()
+  {
+    File file = new File(path);
+    if(file.isAbsolute())
+      return file;
+    return new File(playlist.getAbsoluteFile().getParentFile(), path);
+  }
+
+  /**
+   * @return The number of tracks which were found in front of it.
+   */
+  public int getIndex ()
+  {
+    return index;
+  }
+
+  /**
+   * @return The path of the track as written in the playlist.
+   */
+  public String getPath ()
+  {
+    return path;
+  }
+
+  /**
+   * @return The found track this one belongs in front of or null if it belongs at the end of the list.
+   */
+  public TrackFile getAnchor ()
+  {
+    return anchor;
+  }
+
+  /**
+   * @return The relinked track or null if it wasn't relinked up to now.
+   */
+  public TrackFile getResolved ()
+  {
+    return resolved;
+  }
+}
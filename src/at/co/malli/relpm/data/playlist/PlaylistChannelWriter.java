@@ -0,0 +1,319 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.data.ResourceUtils.PathResolutionException;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * Instances of this class write a playlist into a FileChannel. Text appended by a PlaylistLineWriter is encoded with
+ * one CharsetEncoder into a single large direct buffer, so the channel is written in few big chunks without copying
+ * the bytes once more. Byte ranges of another file can be copied with FileChannel.transferTo() without decoding and
+ * encoding them again. The number of bytes written so far is always known, so the offset of each track can be
+ * recorded.
+ * If line breaks are plain CR/LF bytes in the charset, the encoded lines of each track are stored in its TrackFile, so
+ * saving an unchanged list again mostly copies those arrays into the buffer. Buffers encoded by the caller itself can be
+ * queued with write(ByteBuffer). They are handed to the channel with one gathering write per GATHER_LENGTH buffers.
+ * @author Dietmar Malli
+ */
+public class PlaylistChannelWriter implements Appendable, Closeable
+{
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  public static final int GATHER_LENGTH = 1024; //IOV_MAX on Linux. The JDK wouldn't write more in one call anyway...
+
+  private final FileChannel channel;
+  private final Charset charset;
+  private final CharsetEncoder encoder;
+  private final CharsetEncoder lineEncoder; //Null if encoded lines aren't cached for the charset...
+  private final StringBuilder line = new StringBuilder();
+  private final ByteBuffer bytes;
+  private final ByteBuffer[] gather = new ByteBuffer[GATHER_LENGTH];
+  private int gathered = 0;       //Queued buffers in gather...
+  private long gatheredBytes = 0; //Bytes remaining in them...
+  private int lastRemaining = 0;  //Bytes remaining in the last one when it was queued...
+  private long written = 0; //Bytes already handed to the channel...
+
+
+  /**
+   * @param channel The channel to write to. It is written from its current position on and closed by close().
+   * @param charset The charset used to encode the appended text.
+   */
+  public PlaylistChannelWriter (FileChannel channel, Charset charset)
+  {
+    this(channel, charset, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param channel The channel to write to. It is written from its current position on and closed by close().
+   * @param charset The charset used to encode the appended text.
+   * @param bufferSize The size of the direct buffer in bytes.
+   */
+  public PlaylistChannelWriter (FileChannel channel, Charset charset, int bufferSize)
+  {
+    this.channel = channel;
+    this.charset = charset;
+    this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                                       .onUnmappableCharacter(CodingErrorAction.REPLACE); //Like OutputStreamWriter...
+    if(MappedLineSource.isSupported(charset)) //Stateless for lines, so they can be encoded one by one...
+      this.lineEncoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                                             .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    else
+      this.lineEncoder = null;
+    this.bytes = ByteBuffer.allocateDirect(Math.max(bufferSize, 1024)); //An encoder needs room for a few chars...
+  }
+
+  @Override
+  public Appendable append (CharSequence csq) throws IOException
+  {
+    encode(CharBuffer.wrap(csq == null ? "null" : csq));
+    return this;
+  }
+
+  @Override
+  public Appendable append (CharSequence csq, int start, int end) throws IOException
+  {
+    encode(CharBuffer.wrap(csq == null ? "null" : csq, start, end));
+    return this;
+  }
+
+  @Override
+  public Appendable append (char c) throws IOException
+  {
+    encode(CharBuffer.wrap(new char[] {c}));
+    return this;
+  }
+
+  private void encode (CharBuffer in) throws IOException
+  {
+    if(gathered > 0) //The queued buffers come first...
+      flushGathered();
+    while(true)
+    {
+      CoderResult result = encoder.encode(in, bytes, false);
+      if(result.isOverflow())
+        flushBuffer();
+      else
+        break;
+    }
+  }
+
+  /**
+   * Writes the lines of a track with a PlaylistLineWriter. If possible, the encoded lines stored in the track by the
+   * last save to the same directory are written instead, without formatting and encoding them again.
+   * @param lineWriter The writer for the playlist format.
+   * @param playlist The playlist which is written.
+   * @param track The track to write.
+   * @throws IOException if an I/O-Exception occurs.
+   * @throws PathResolutionException if the path of the track can't be relativized.
+   */
+  public void writeTrackFile (PlaylistLineWriter lineWriter, File playlist, TrackFile track) throws IOException,
+                                                                                                   PathResolutionException
+  {
+    if(lineEncoder == null || lineWriter instanceof GatheringM3ULineWriter) //It encodes on its own...
+    {
+      lineWriter.writeTrackFile(this, playlist, track);
+      return;
+    }
+    File directory = playlist.getAbsoluteFile().getParentFile();
+    byte[] encoded = track.getEncodedLine(directory, charset);
+    if(encoded == null)
+    {
+      line.setLength(0);
+      lineWriter.writeTrackFile(line, playlist, track);
+      ByteBuffer buf = lineEncoder.encode(CharBuffer.wrap(line));
+      encoded = new byte[buf.remaining()];
+      buf.get(encoded);
+      track.setEncodedLine(directory, charset, encoded);
+    }
+    write(encoded);
+  }
+
+  /**
+   * Writes already encoded bytes behind the text appended so far.
+   * @param b The bytes to write.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void write (byte[] b) throws IOException
+  {
+    if(gathered > 0)
+      flushGathered();
+    if(b.length > bytes.remaining())
+    {
+      flushBuffer();
+      if(b.length > bytes.capacity()) //Doesn't fit at all...
+      {
+        ByteBuffer wrapped = ByteBuffer.wrap(b);
+        while(wrapped.hasRemaining())
+          written += channel.write(wrapped);
+        return;
+      }
+    }
+    bytes.put(b);
+  }
+
+  /**
+   * Queues an encoded buffer behind the text appended so far. Its remaining bytes are written by the next gathering
+   * write, so the buffer must not be changed until flushGathered() was called or the writer was finished. The only
+   * exception is the buffer queued last: Its limit may be moved on and it may be passed again to write the bytes
+   * encoded behind it in the meantime. After a flush its position is at its old limit, so passing it again queues
+   * only the new bytes as well.
+   * @param buf The buffer to write from its position to its limit.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void write (ByteBuffer buf) throws IOException
+  {
+    if(gathered > 0 && gather[gathered - 1] == buf) //Grown by the caller...
+    {
+      gatheredBytes += buf.remaining() - lastRemaining;
+      lastRemaining = buf.remaining();
+      return;
+    }
+    if(bytes.position() > 0)
+      flushBuffer(); //The text appended before comes first...
+    gather[gathered++] = buf;
+    lastRemaining = buf.remaining();
+    gatheredBytes += lastRemaining;
+    if(gathered == gather.length)
+      flushGathered();
+  }
+
+  /**
+   * Writes all buffers queued by write(ByteBuffer) with gathering writes. Afterwards they may be reused.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void flushGathered () throws IOException
+  {
+    int first = 0;
+    while(first < gathered)
+    {
+      channel.write(gather, first, gathered - first);
+      while(first < gathered && !gather[first].hasRemaining())
+        first++;
+    }
+    for(int i = 0; i < gathered; i++)
+      gather[i] = null;
+    written += gatheredBytes;
+    gathered = 0;
+    gatheredBytes = 0;
+  }
+
+  /**
+   * Copies a range of another file behind the text appended so far.
+   * @param source The channel to copy from.
+   * @param position The offset of the first byte to copy.
+   * @param count The number of bytes to copy.
+   * @throws IOException if an I/O-Exception occurs or the source ends before count bytes were copied.
+   */
+  public void transferFrom (FileChannel source, long position, long count) throws IOException
+  {
+    flushBuffer();
+    long done = 0;
+    while(done < count)
+    {
+      long transferred = source.transferTo(position + done, count - done, channel);
+      if(transferred <= 0)
+        throw new IOException("The source ended " + (count - done) + " bytes too early");
+      done += transferred;
+    }
+    written += count;
+  }
+
+  /**
+   * Copies a range of the bytes written so far into another writer. The channel of this writer has to be readable.
+   * @param target The writer to append the bytes to.
+   * @param position The offset of the first byte to copy as returned by position().
+   * @param count The number of bytes to copy.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void copyTo (PlaylistChannelWriter target, long position, long count) throws IOException
+  {
+    flushBuffer(); //The range may still be buffered...
+    target.transferFrom(channel, position, count);
+  }
+
+  /**
+   * @return The number of bytes written so far, including the ones still buffered.
+   */
+  public long position ()
+  {
+    return written + gatheredBytes + bytes.position();
+  }
+
+  private void flushBuffer () throws IOException
+  {
+    if(gathered > 0)
+      flushGathered();
+    bytes.flip();
+    while(bytes.hasRemaining())
+      written += channel.write(bytes);
+    bytes.clear();
+  }
+
+  /**
+   * Ends the encoding and writes all buffered bytes to the channel. Nothing may be appended afterwards.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void finish () throws IOException
+  {
+    CharBuffer empty = CharBuffer.allocate(0);
+    while(encoder.encode(empty, bytes, true).isOverflow())
+      flushBuffer();
+    while(encoder.flush(bytes).isOverflow())
+      flushBuffer();
+    flushBuffer();
+  }
+
+  /**
+   * Writes everything and forces it onto the storage device.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public void sync () throws IOException
+  {
+    finish();
+    channel.force(true);
+  }
+
+  /**
+   * @return The charset used to encode the appended text.
+   */
+  public Charset getCharset ()
+  {
+    return charset;
+  }
+
+  /**
+   * Closes the channel. Buffered bytes are only written by finish() or sync().
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  @Override
+  public void close () throws IOException
+  {
+    channel.close();
+  }
+}
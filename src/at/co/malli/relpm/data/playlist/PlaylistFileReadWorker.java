@@ -17,29 +17,28 @@
  */
 package at.co.malli.relpm.data.playlist;
 
+import at.co.malli.lib.data.EncodingDetector;
 import at.co.malli.lib.data.FileHelpers;
+import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.TagReadPool;
+import at.co.malli.relpm.data.audiofiles.TrackFile;
 import at.co.malli.relpm.data.audiofiles.TrackFileList;
 import at.co.malli.lib.gui.ExceptionDisplayer;
 import at.co.malli.relpm.gui.MainGUI;
 import at.co.malli.lib.gui.ProgressDialog;
+import at.co.malli.lib.gui.ProgressSampler;
 import at.co.malli.lib.status.StatusNotifier;
-import at.co.malli.lib.data.StringHelpers;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
-import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
-import javax.swing.filechooser.FileNameExtensionFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -47,26 +46,34 @@ import org.apache.logging.log4j.Logger;
 /**
  * @author Dietmar Malli
  */
-public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Integer> //Finished,Last processed Line..
+public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Object> //Finished,State or Batch..
 {
   private static final Logger logger = LogManager.getLogger(PlaylistFileReadWorker.class.getName());
   
-  public static final int STATE_AUDIOFILE_NOT_FOUND = -3;   //Wait for user to show the file location...
+  public static final int STATE_READING_TAGS = -4;          //Waiting for the TagReadPool...
   public static final int STATE_NONASCII_FOUND = -2;   //Wait for user to answer the encoding-question...
-  public static final int STATE_READING = -1;          //-1 --> Reading File into RAM...
-  public static final int STATE_BEGIN_PARSING = 0;     //Positive Values = Parsed Lines...
+  public static final int STATE_READING = -1;          //-1 --> Detecting the encoding...
+  public static final int STATE_BEGIN_PARSING = 0;     //Decoded bytes are shown by the ProgressSampler...
+  
+  private static final int BATCH_SIZE = 1000;          //Tracks handed to the GUI at once while parsing...
   
   private final MainGUI mainGui;
   private final File playlistFile;
-  private final ArrayList<String> lines;
   private String encoding;
-  private int lineCount;
+  private int byteCount;
+  private int tagCount;
   
   private final ProgressDialog prog;
-  private final AtomicBoolean userAbort;
+  private final ProgressSampler progress; //Line and track numbers are sampled instead of published...
+  
+  //The answers of the user. Each question gets a new future, which is completed by process() on the EDT...
+  private volatile CompletableFuture<String> encodingAnswer;
   
-  private String unfoundPlaylistPath;
-  private File userSuppliedAudioFile;
+  private final ArrayList<MissingTrack> missing = new ArrayList<>(); //Relinked by the user after parsing...
+  
+  private volatile boolean streaming;  //False once the GUI declined a batch or done() was called...
+  private int published = 0;           //Tracks published as Batch by doInBackground()...
+  private int delivered = 0;           //Tracks the GUI took, only used on the EDT...
   
   /**
    * This class uses external classes to parse a paylist and does also some interaction with the user if needed.
@@ -77,12 +84,14 @@ public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Integer> /
   {
     this.mainGui = reference;
     this.playlistFile = file;
-    this.lines = new ArrayList<>();
     this.encoding = "DEFAULT";
-    this.lineCount = 0;
+    this.byteCount = 0;
+    this.tagCount = 0;
     
     this.prog = new ProgressDialog(null, false); //must not be modal because of being called in edt...
-    this.userAbort = new AtomicBoolean(false);
+    this.progress = new ProgressSampler(prog);
+    this.progress.start();
+    this.streaming = SettingsProvider.getInstance().getBoolean("data.import.progressiveList");
   }
 
   /**
@@ -94,110 +103,161 @@ public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Integer> /
   protected TrackFileList doInBackground () throws Exception
   {
     publish(STATE_READING);
-    BufferedReader r = new BufferedReader(new FileReader(playlistFile));
-    while(r.ready())
-    {
-      if(!prog.isPressedCancel())
-        lines.add(r.readLine());
-      else
-        throw new Exception("The user aborted the file reading procedure...");
-    }
-    r.close();
-    r = null;
-    for(String line : lines)
-    {
-      if(StringHelpers.containsNonASCII(line))
-      {
-        encoding = "NONASCII";
-        break;
-      }
-    }
-    if(encoding.equals("NONASCII"))
+    EncodingDetector detector = EncodingDetector.detect(playlistFile);
+    Charset charset = detector.getCharset();
+    if(charset == null) //Not valid UTF-8...
     {
-      publish(STATE_NONASCII_FOUND);
-      synchronized(PlaylistFileReadWorker.class)
+      String fallback = SettingsProvider.getInstance().getString("data.import.fallbackEncoding");
+      if(fallback.equals("ASK"))
       {
-        PlaylistFileReadWorker.class.wait();
+        encodingAnswer = new CompletableFuture<>();
+        publish(STATE_NONASCII_FOUND);
+        encoding = encodingAnswer.get(); //Only this worker waits for this answer...
+        if(encoding == null)
+          throw new Exception("The user closed the encoding dialog...");
+        charset = Charset.forName(encoding);
       }
-      if(userAbort.get())
-        throw new Exception("The user closed the encoding dialog...");
-    }
-    if(!encoding.equals("DEFAULT"))
-    {
-      publish(STATE_READING);
-      lines.clear();
-      r = new BufferedReader(new InputStreamReader(new FileInputStream(playlistFile),encoding));
-      while(r.ready())
-      if(!prog.isPressedCancel())
-        lines.add(r.readLine());
       else
-        throw new Exception("The user aborted the non ASCII file reading procedure...");
-      r.close();
-      r = null;
+        charset = Charset.forName(fallback);
     }
-    lineCount = lines.size();
+    logger.trace("Reading " + playlistFile + " as " + charset.name());
+    byteCount = (int) Math.min(playlistFile.length(), Integer.MAX_VALUE);
     publish(STATE_BEGIN_PARSING);
-    PlaylistLineParser parser;
-    String extension = FileHelpers.getExtension(playlistFile);
-    switch(extension)
-    {
-      case "m3u":
-      case "m3u8":
-        parser = new M3ULineParser(playlistFile);
-      break;
-        
-      default:
-        parser = new M3ULineParser(playlistFile);
-      break;
-    }
-    for(int i = 0; i<lineCount; i++)
+    TagReadPool tagPool = null;
+    int tagThreads = SettingsProvider.getInstance().getInt("data.import.tagReaderThreads");
+    boolean lazyTags = SettingsProvider.getInstance().getBoolean("data.import.lazyTags"); //Read by the GUI later...
+    if(tagThreads > 1 && !lazyTags)
+      tagPool = new TagReadPool(tagThreads); //Paths are still resolved in order, only the tags are read in parallel...
+    try
     {
-      if(prog.isPressedCancel())
-        throw new Exception("The user closed the parsing dialog...");
-      publish(i+1);
-      try
+      PlaylistLineParser parser;
+      String extension = FileHelpers.getExtension(playlistFile);
+      switch(extension)
       {
-        if(userSuppliedAudioFile != null)
+        case "m3u":
+        case "m3u8":
+          parser = new M3ULineParser(playlistFile, tagPool, lazyTags);
+        break;
+
+        default:
+          parser = new M3ULineParser(playlistFile, tagPool, lazyTags);
+        break;
+      }
+      try (PlaylistLineSource source = openLineSource(charset, detector.getBomLength()))
+      {
+        String line = source.readLine();
+        while(line != null)
         {
-          parser.addLine(lines.get(i),userSuppliedAudioFile);
-          userSuppliedAudioFile = null;
+          if(prog.isPressedCancel())
+            throw new Exception("The user closed the parsing dialog...");
+          progress.set((int) Math.min(source.getBytesRead(), byteCount));
+          try
+          {
+            parser.addLine(line);
+            if(streaming && parser.getTracks().size() - published >= BATCH_SIZE)
+              publishBatch(parser.getTracks());
+          }
+          catch (FileNotFoundException ex)
+          {
+            missing.add(parser.skipMissing()); //The user can relink all of them at once afterwards...
+            logger.debug(ex.getMessage());
+          }
+          line = source.readLine();
         }
-        else
-          parser.addLine(lines.get(i));
       }
-      catch (FileNotFoundException ex)
+      for(MissingTrack track : missing)
+        track.setAnchor(parser.getTracks());
+      if(streaming && parser.getTracks().size() > published)
+        publishBatch(parser.getTracks()); //The GUI can be used while the tags are still being read...
+      if(tagPool != null)
       {
-        unfoundPlaylistPath = lines.get(i);
-        publish(STATE_AUDIOFILE_NOT_FOUND);
-        synchronized(PlaylistFileReadWorker.class)
+        tagCount = tagPool.getSubmitted();
+        publish(STATE_READING_TAGS);
+        while(!tagPool.isDone())
         {
-          PlaylistFileReadWorker.class.wait();
+          if(prog.isPressedCancel())
+            throw new Exception("The user closed the tag reading dialog...");
+          tagPool.awaitNext();
+          progress.set(tagPool.getCompleted());
         }
-        if(userAbort.get())
-          throw new Exception("The user closed the JFileChooser...");
-        publish(STATE_BEGIN_PARSING);
-        i--; //redo current with new information... (for will increment again...)
       }
+      //The parser kept the playlist order. The pool only filled in the tags of the already ordered tracks...
+      return new TrackFileList(parser.getTracks(),playlistFile);
+    }
+    finally
+    {
+      if(tagPool != null)
+        tagPool.shutdown();
     }
-    return new TrackFileList(parser.getTracks(),playlistFile);
+  }
+
+
+  /**
+   * Publishes the tracks parsed since the last batch. They are copied, as the parser goes on adding to its list.
+   * @param tracks The list of the parser.
+   */
+  private void publishBatch (ArrayList<TrackFile> tracks)
+  {
+    publish(new Batch(published, new ArrayList<>(tracks.subList(published, tracks.size()))));
+    published = tracks.size();
+  }
+
+  /**
+   * Hands a batch to the MainGUI, which shows it at the end of the list. Runs on the EDT.
+   * @param batch The published batch.
+   */
+  private void deliver (Batch batch)
+  {
+    if(!streaming || batch.start != delivered) //Declined or already handed over by done()...
+      return;
+    int count = batch.tracks.size();
+    if(mainGui.handleReadWorkerBatch(this, playlistFile, batch.tracks))
+      delivered += count;
+    else
+      streaming = false; //The whole list is handed over in done() as usual...
+  }
+
+
+  /**
+   * Big playlists are read from a memory mapped file if the charset allows splitting the lines on raw bytes. Smaller
+   * ones aren't worth the mapping and are read through a BufferedReader.
+   * @param charset The charset of the playlist.
+   * @param bomLength The number of bytes of a byte order mark at the beginning of the file.
+   * @return The opened source.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  private PlaylistLineSource openLineSource (Charset charset, int bomLength) throws IOException
+  {
+    long threshold = SettingsProvider.getInstance().getInt("data.import.mappedReadThreshold");
+    long length = playlistFile.length();
+    if(threshold >= 0 && length >= threshold && length <= Integer.MAX_VALUE && MappedLineSource.isSupported(charset))
+      return new MappedLineSource(playlistFile, charset, bomLength);
+    return new ReaderLineSource(playlistFile, charset, bomLength);
   }
 
 
   /**
    * As this method is ran on the EDT the whole user interaction is done here. The doInBackgroundMethod is usually
-   * blocked by a wait() call during the user interaction is active. It must be notified from here.
+   * waiting for the future of the current question during the user interaction is active. It must be completed from
+   * here, with null if the user aborted.
    * @param chunks 
    */
   @Override
-  protected void process (List<Integer> chunks)
+  protected void process (List<Object> chunks)
   {
-    for(int state : chunks)
+    for(Object chunk : chunks)
     {
+      if(chunk instanceof Batch)
+      {
+        deliver((Batch) chunk);
+        continue;
+      }
+      int state = (Integer) chunk;
       switch(state)
       {
         case STATE_READING:
-          prog.setText("Reading file into RAM");
-          prog.setValue(0);
+          prog.setText("Detecting character encoding");
+          progress.reset(0);
           prog.setVisible(true);
         break;
         case STATE_NONASCII_FOUND:
@@ -205,48 +265,21 @@ public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Integer> /
           Set<String> keySet = Charset.availableCharsets().keySet();
           String[] charsets = keySet.toArray(new String[0]);
           Object answer = JOptionPane.showInputDialog(null,
-                          "A Non-ASCII Digit was found in the file... Which Encoding should be used to read the file?",
+                          "The file is not encoded in UTF-8... Which Encoding should be used to read the file?",
                           "Character Encoding",JOptionPane.QUESTION_MESSAGE,null,charsets,null);
-          if(answer == null)
-            userAbort.set(true);
-          else
-            encoding = (String) answer;
-          synchronized(PlaylistFileReadWorker.class)
-          {
-            PlaylistFileReadWorker.class.notifyAll();
-          }
+          encodingAnswer.complete((String) answer);
         break;
         case STATE_BEGIN_PARSING:
           prog.setText("Parsing M3U lines");
-          prog.setMaximum(lineCount);
-          prog.setValue(0);
+          prog.setMaximum(byteCount);
+          progress.reset(0);
           prog.setVisible(true);
         break;
-        case STATE_AUDIOFILE_NOT_FOUND:
-          prog.setVisible(false);
-          JOptionPane.showMessageDialog(null, "The file " + unfoundPlaylistPath +
-                                        " was not found... Please locate it in the following dialog.", "File not found",
-                                        JOptionPane.INFORMATION_MESSAGE);
-          JFileChooser chooser = new JFileChooser();
-          userSuppliedAudioFile = playlistFile; //initialize with Playlist-Directory...
-          if(userSuppliedAudioFile != null)
-            chooser.setSelectedFile(userSuppliedAudioFile);
-          FileNameExtensionFilter mp3 = new FileNameExtensionFilter("MP3-Files (.mp3)", "mp3");
-          FileNameExtensionFilter audio = new FileNameExtensionFilter("Audio-Files (.mp3, .wav, .ogg)", "mp3", "wav", "ogg");
-          chooser.setFileFilter(mp3);
-          chooser.addChoosableFileFilter(audio);
-          chooser.addChoosableFileFilter(chooser.getAcceptAllFileFilter());
-          int returnVal = chooser.showOpenDialog(null);
-          if(returnVal == JFileChooser.APPROVE_OPTION)
-            userSuppliedAudioFile = chooser.getSelectedFile();
-          else
-            userAbort.set(true);
-          synchronized(PlaylistFileReadWorker.class)
-          {
-            PlaylistFileReadWorker.class.notifyAll();
-          }
-        default: //Parsed line number...
-          prog.setValue(state);
+        case STATE_READING_TAGS:
+          prog.setText("Reading audio file tags");
+          prog.setMaximum(tagCount);
+          progress.reset(0);
+          prog.setVisible(true);
         break;
       }
     }
@@ -258,24 +291,56 @@ public class PlaylistFileReadWorker extends SwingWorker<TrackFileList,Integer> /
   @Override
   protected void done()
   {
+    progress.stop();
     prog.dispose();
+    streaming = false; //Batches processed after this call are dropped...
     try
     {
       TrackFileList data = get();
       logger.trace("Finished reading playlist...");
       StatusNotifier.getInstance().fireStatusEvent(this, playlistFile.getAbsolutePath() + " was successfully read...");
-      mainGui.handleReadWorkerOutput(data);
+      if(delivered > 0) //The GUI shows the list already. The tracks of the pending batches are added right now...
+      {
+        ArrayList<TrackFile> rest = new ArrayList<>(data.getSize() - delivered);
+        for(int i = delivered; i < data.getSize(); i++)
+          rest.add(data.get(i));
+        delivered = data.getSize();
+        if(!rest.isEmpty())
+          mainGui.handleReadWorkerBatch(this, playlistFile, rest);
+        mainGui.handleReadWorkerFinished(this, missing);
+      }
+      else
+        mainGui.handleReadWorkerOutput(data, missing);
     }
     catch (ExecutionException ex)
     {
+      if(delivered > 0)
+        mainGui.handleReadWorkerAborted();
       Throwable cause = ex.getCause();
       StatusNotifier.getInstance().fireStatusEvent(this, cause.getMessage());
       logger.trace(cause.getMessage());
     }
     catch (Exception ex)
     {
+      if(delivered > 0)
+        mainGui.handleReadWorkerAborted();
       logger.error(ex.getMessage());
       ExceptionDisplayer.showErrorMessage(ex);
     }
   }
+  
+  /**
+   * Tracks which were parsed since the last batch.
+   */
+  private static class Batch
+  {
+    private final int start;                     //Index of the first track in the parsed list...
+    private final ArrayList<TrackFile> tracks;
+
+    private Batch (int start, ArrayList<TrackFile> tracks)
+    {
+      this.start = start;
+      this.tracks = tracks;
+    }
+  }
 }
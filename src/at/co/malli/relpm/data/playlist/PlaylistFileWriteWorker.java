@@ -21,21 +21,22 @@ import at.co.malli.lib.data.FileHelpers;
 import at.co.malli.lib.data.StringHelpers;
 import at.co.malli.lib.gui.ExceptionDisplayer;
 import at.co.malli.lib.gui.ProgressDialog;
+import at.co.malli.lib.gui.ProgressSampler;
 import at.co.malli.lib.status.StatusNotifier;
+import at.co.malli.relpm.data.RelativePathResolver;
 import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.SaveSnapshot;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
 import at.co.malli.relpm.data.audiofiles.TrackFileList;
 import at.co.malli.relpm.gui.MainGUI;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
-import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
 import org.apache.logging.log4j.LogManager;
@@ -51,25 +52,43 @@ public class PlaylistFileWriteWorker extends SwingWorker<Object,Integer> //usele
   public static final int STATE_SEARCH_NONASCII = -1;
   public static final int STATE_NONASCII_FOUND = -2;
   public static final int STATE_WRITING_LAST100 = -3;
-  public static final int STATE_BEGIN_WRITING = 0; //Positive values == written line..
+  public static final int STATE_BEGIN_WRITING = 0; //Written tracks are shown by the ProgressSampler..
   
   private final ProgressDialog prog;
+  private final ProgressSampler progress; //Line and track numbers are sampled instead of published...
   
-  private AtomicBoolean userAbort;
+  private volatile CompletableFuture<String> encodingAnswer; //Completed by process() on the EDT...
   private String encoding;
   
-  private final TrackFileList list;
+  private final TrackFileList original; //The list of the GUI, which may be edited while it is written...
+  private final TrackFileList list;     //The copy which is written...
+  private final int save;               //The number TrackFileList.beginSave() returned...
+  private SaveSnapshot written = null;  //Handed to the original on the EDT...
+  private final boolean background;
   private final File playlistFile;
   private final MainGUI mainGUI;
   
-  public PlaylistFileWriteWorker (MainGUI reference, TrackFileList toSave, File toWrite)
+  /**
+   * Must be created on the EDT. The tracks are copied right here, so the list can be edited while it is written.
+   * @param reference A reference to the MainGUI which is informed when writing is done.
+   * @param toSave The list to save.
+   * @param toWrite The playlist file to write.
+   * @param background True if the save wasn't started by the user. No dialog is shown then. If the encoding would
+   *                   have to be asked for, writing fails instead.
+   */
+  public PlaylistFileWriteWorker (MainGUI reference, TrackFileList toSave, File toWrite, boolean background)
   {
     this.prog = new ProgressDialog(null, false); //must not be modal because of being called in edt...
-    this.list = toSave;
+    this.progress = new ProgressSampler(prog);
+    if(!background)
+      this.progress.start();
+    this.original = toSave;
+    this.save = toSave.beginSave();
+    this.list = toSave.copy();
+    this.background = background;
     this.encoding = "DEFAULT";
     this.playlistFile = toWrite;
     this.mainGUI = reference;
-    this.userAbort = new AtomicBoolean(false);
   }
   
   @Override
@@ -77,91 +96,200 @@ public class PlaylistFileWriteWorker extends SwingWorker<Object,Integer> //usele
   {
     publish(STATE_SEARCH_NONASCII);
     for(TrackFile item : list)
+      item.readPendingTags(); //The file gets the same lines as if the tags had been read while opening it...
+    String[] paths = RelativePathResolver.forPlaylist(playlistFile).relativize(list); //The paths which will be written...
+    for(int i = 0; i < paths.length; i++)
     {
-      String info = item.getRelativePath();
-      if(item.getArtist()!=null && item.getTitle()!=null)
-        info+=" "+item.getArtist()+" "+item.getTitle();
-      if(StringHelpers.containsNonASCII(info))
+      TrackFile item = list.get(i);
+      boolean nonASCII = StringHelpers.containsNonASCII(paths[i]);
+      if(!nonASCII && item.getArtist()!=null && item.getTitle()!=null) //No need to concatenate them for the check...
+        nonASCII = StringHelpers.containsNonASCII(item.getArtist()) || StringHelpers.containsNonASCII(item.getTitle());
+      if(nonASCII)
       {
         encoding = "NONASCII";
-        logger.trace("Non-ASCII digit found in line:"+info);
+        logger.trace("Non-ASCII digit found in track:"+paths[i]);
         break;
       }
     }
+    SaveSnapshot last = list.getSnapshot();
+    if(encoding.equals("NONASCII") && background)
+    {
+      if(last == null || !last.getFile().equals(playlistFile.getAbsoluteFile()) || last.getEncoding().equals("DEFAULT"))
+        throw new Exception("Could not save " + playlistFile.getName() + " in the background: It needs an encoding...");
+      encoding = last.getEncoding(); //The one the user chose for the last save of this file...
+    }
     if(encoding.equals("NONASCII"))
     {
+      encodingAnswer = new CompletableFuture<>();
       publish(STATE_NONASCII_FOUND);
-      synchronized(PlaylistFileWriteWorker.class)
-      {
-        PlaylistFileWriteWorker.class.wait();
-      }
-      if(userAbort.get())
+      String answer = encodingAnswer.get(); //Only this worker waits for this answer...
+      if(answer == null)
         throw new Exception("The user closed the encoding dialog...");
+      encoding = answer;
     }
     publish(STATE_BEGIN_WRITING);
-    BufferedWriter bw;
-    if(!encoding.equals("DEFAULT"))
-      bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(playlistFile),encoding));
-    else
-      bw = new BufferedWriter(new FileWriter(playlistFile)); //ASCII-only.. no matter which encoding...
     PlaylistLineWriter lineWriter;
     String extension = FileHelpers.getExtension(playlistFile);
     switch(extension)
     {
       case "m3u":
       case "m3u8":
-        lineWriter = new M3ULineWriter();
+        lineWriter = createM3ULineWriter();
       break;
         
       default:
-        lineWriter = new M3ULineWriter();
+        lineWriter = createM3ULineWriter();
       break;
     }
-    lineWriter.writeIntro(bw,playlistFile,encoding);
-    for(int i = 0; i<list.getSize(); i++)
+    Charset charset = (encoding.equals("DEFAULT") ? Charset.defaultCharset() : Charset.forName(encoding));
+    boolean reuse = SettingsProvider.getInstance().getBoolean("data.export.incremental");
+    try (PlaylistTransaction transaction = new PlaylistTransaction())
     {
-      publish(i+1);
-      lineWriter.writeTrackFile(bw, playlistFile, list.get(i));
+      PlaylistChannelWriter main = transaction.open(playlistFile, charset);
+      long[] offsets = writePlaylist(main, lineWriter, reuse);
+      int window = SettingsProvider.getInstance().getInt("data.export.lastWindow");
+      int size = list.getSize();
+      //Export another list with the last songs. It makes no sense if the list itself isn't longer...
+      if(SettingsProvider.getInstance().getBoolean("data.export.last100") && window > 0)
+      {
+        String lastDir = playlistFile.getParentFile().getAbsolutePath();
+        String baseFilename = playlistFile.getName();
+        String baseFileExtension = FileHelpers.getExtension(playlistFile);
+        int index = baseFilename.indexOf("."+baseFileExtension);
+        String wantedFilename = baseFilename.substring(0, index);
+        File wantedFile = new File(lastDir+"/"+wantedFilename+"_last"+window+"."+baseFileExtension);
+
+        if(size >= window)
+        {
+          publish(STATE_WRITING_LAST100);
+          PlaylistChannelWriter w = transaction.open(wantedFile, charset);
+          lineWriter.writeIntro(w,wantedFile,encoding);
+          //Both files share the directory, so the track lines are the same bytes as in the main file...
+          main.copyTo(w, offsets[size - window], offsets[size] - offsets[size - window]);
+          lineWriter.writeOutro(w,wantedFile,encoding);
+        }
+        else
+          transaction.delete(wantedFile); //The export of a longer version of the list would be left behind otherwise...
+      }
+      transaction.commit(); //Both files are replaced only if both were written completely...
+      written = new SaveSnapshot(playlistFile, encoding, offsets);
     }
-    lineWriter.writeOutro(bw,playlistFile,encoding);
-    bw.flush();
-    bw.close();
-    if(SettingsProvider.getInstance().getBoolean("data.export.last100")) //Export another list with the last 100 songs
+    return new Object();
+  }
+
+  /**
+   * @return The M3U writer selected in data.export.lineWriter. The lines of the plain M3ULineWriter are cached in the
+   *         TrackFiles by the PlaylistChannelWriter, the GatheringM3ULineWriter encodes into its own buffers instead.
+   */
+  private static PlaylistLineWriter createM3ULineWriter ()
+  {
+    if(SettingsProvider.getInstance().getString("data.export.lineWriter").equals("GATHERING"))
+      return new GatheringM3ULineWriter();
+    return new M3ULineWriter();
+  }
+
+  /**
+   * Writes the playlist. If reuse is set and the playlist file wasn't touched
+   * since the last save of this list, the unchanged tracks at its beginning and its end are copied from it with
+   * transferTo() instead of being encoded again. Only the changed range in between is written by the
+   * PlaylistLineWriter.
+   * @param w The writer of the transaction the playlist is written in.
+   * @param lineWriter The writer for the playlist format.
+   * @param reuse True if unchanged parts of the old file may be copied.
+   * @return The offsets of the tracks in the written file followed by the offset of the outro.
+   * @throws Exception if writing fails.
+   */
+  private long[] writePlaylist (PlaylistChannelWriter w, PlaylistLineWriter lineWriter, boolean reuse) throws Exception
+  {
+    Charset charset = (encoding.equals("DEFAULT") ? Charset.defaultCharset() : Charset.forName(encoding));
+    int size = list.getSize();
+    SaveSnapshot old = list.getSnapshot();
+    int head = 0;
+    int tail = 0;
+    //Copied ranges must not contain a byte order mark, so only ASCII compatible charsets are reused...
+    if(reuse && old != null && old.isValidFor(playlistFile, encoding) && MappedLineSource.isSupported(charset))
     {
-      publish(STATE_WRITING_LAST100);
-      String last100Dir = playlistFile.getParentFile().getAbsolutePath();
-      String baseFilename = playlistFile.getName();
-      String baseFileExtension = FileHelpers.getExtension(playlistFile);
-      int index = baseFilename.indexOf("."+baseFileExtension);
-      String wantedFilename = baseFilename.substring(0, index);
-      File wantedFile = new File(last100Dir+"/"+wantedFilename+"_last100."+baseFileExtension);
-      
-      if(!encoding.equals("DEFAULT"))
-        bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(wantedFile),encoding));
+      int oldCount = old.getTrackCount();
+      head = Math.min(list.getCleanHead(), Math.min(size, oldCount));
+      tail = Math.min(list.getCleanTail(), Math.min(size - head, oldCount - head)); //Head and tail must not overlap...
+      logger.trace("Reusing " + head + " leading and " + tail + " trailing tracks of " + playlistFile);
+    }
+    else
+      old = null;
+    
+    long[] offsets = new long[size + 1];
+    try (FileChannel source = (old != null ? FileChannel.open(playlistFile.toPath(), StandardOpenOption.READ) : null))
+    {
+      if(old != null)
+      {
+        w.transferFrom(source, 0, old.getOffset(head)); //Intro and unchanged head...
+        for(int i = 0; i < head; i++)
+          offsets[i] = old.getOffset(i);
+        if(head > 0)
+          progress.set(head);
+      }
+      else
+        lineWriter.writeIntro(w, playlistFile, encoding);
+      for(int i = head; i < size - tail; i++)
+      {
+        progress.set(i+1);
+        offsets[i] = w.position();
+        w.writeTrackFile(lineWriter, playlistFile, list.get(i));
+      }
+      if(old != null)
+      {
+        int oldFirst = old.getTrackCount() - tail;
+        long delta = w.position() - old.getOffset(oldFirst);
+        for(int i = 0; i <= tail; i++)
+          offsets[size - tail + i] = old.getOffset(oldFirst + i) + delta;
+        w.transferFrom(source, old.getOffset(oldFirst), old.getLength() - old.getOffset(oldFirst)); //Tail and outro...
+        progress.set(size);
+      }
       else
-        bw = new BufferedWriter(new FileWriter(wantedFile)); //ASCII-only.. no matter which encoding...
-      lineWriter.writeIntro(bw,wantedFile,encoding);
-      int firstIndex = (list.getSize() >= 100 ? list.getSize() - 100 : 0);
-      int lastIndex = list.getSize();
-      for(int i = firstIndex; i < lastIndex; i++)
-        lineWriter.writeTrackFile(bw, wantedFile, list.get(i));
-      lineWriter.writeOutro(bw,wantedFile,encoding);
-      bw.flush();
-      bw.close();
+      {
+        offsets[size] = w.position();
+        lineWriter.writeOutro(w, playlistFile, encoding);
+      }
     }
-    return new Object();
+    return offsets;
+  }
+
+  /**
+   * @return True if the save wasn't started by the user.
+   */
+  public boolean isBackground ()
+  {
+    return background;
+  }
+
+  /**
+   * @return The list which is saved. The worker writes a copy of it.
+   */
+  public TrackFileList getTrackFileList ()
+  {
+    return original;
+  }
+
+  /**
+   * @return The playlist file which is written.
+   */
+  public File getPlaylistFile ()
+  {
+    return playlistFile;
   }
 
   @Override
   protected void process (List<Integer> chunks)
   {
+    if(background)
+      return; //Nothing is shown and nothing is asked...
     for(int state : chunks)
     {
       switch(state)
       {
         case STATE_SEARCH_NONASCII:
           prog.setText("Searching for NON-ASCII digits");
-          prog.setValue(0);
+          progress.reset(0);
           prog.setVisible(true);
         break;
         case STATE_NONASCII_FOUND:
@@ -172,30 +300,20 @@ public class PlaylistFileWriteWorker extends SwingWorker<Object,Integer> //usele
                           "A Non-ASCII Digit was found in the information which should be written. "
                           + "Which Encoding should be used to write the file?",
                           "Character Encoding",JOptionPane.QUESTION_MESSAGE,null,charsets,null);
-          if(answer == null)
-            userAbort.set(true);
-          else
-            encoding = (String) answer;
-          synchronized(PlaylistFileWriteWorker.class)
-          {
-            PlaylistFileWriteWorker.class.notifyAll();
-          }
+          encodingAnswer.complete((String) answer);
         break;
         case STATE_BEGIN_WRITING:
           prog.setText("Writing M3U file");
           prog.setMaximum(list.getSize());
-          prog.setValue(0);
+          progress.reset(0);
           prog.setVisible(true);
         break;
         case STATE_WRITING_LAST100:
-          prog.setText("Writing last-100 M3U file");
+          prog.setText("Writing last-" + SettingsProvider.getInstance().getInt("data.export.lastWindow") + " M3U file");
           prog.setMaximum(100);
-          prog.setValue(99); // we all know that feeling ;) Writing 100 files just can't take long..
+          progress.reset(99); // we all know that feeling ;) Writing 100 files just can't take long..
           prog.setVisible(true);
         break;
-        default: //Parsed line number...
-          prog.setValue(state);
-        break;
       }
     }
   }
@@ -203,10 +321,12 @@ public class PlaylistFileWriteWorker extends SwingWorker<Object,Integer> //usele
   @Override
   protected void done ()
   {
+    progress.stop();
     prog.dispose();
     try
     {
       get(); //Exceptions will be received here...
+      original.setSaved(written, save);
       mainGUI.handleWriteWorkerOutput(true);
       logger.trace("Finished writing playlist...");
       StatusNotifier.getInstance().fireStatusEvent(this, playlistFile.getName()+ " was successfully written...");
@@ -222,7 +342,8 @@ public class PlaylistFileWriteWorker extends SwingWorker<Object,Integer> //usele
     {
       mainGUI.handleWriteWorkerOutput(false);
       logger.error(ex.getMessage());
-      ExceptionDisplayer.showErrorMessage(ex);
+      if(!background)
+        ExceptionDisplayer.showErrorMessage(ex);
     }
   }
   
@@ -54,6 +54,13 @@ public interface PlaylistLineParser
    */
   public void addLine (String playlistLine, File userSuppliedAudioFile) throws FileNotFoundException, PathResolutionException;
   
+  /**
+   * When addLine() threw a FileNotFoundException, the track can be skipped with this method, so the rest of the
+   * playlist can still be parsed. The skipped track can be relinked with the returned object afterwards.
+   * @return The skipped track.
+   */
+  public MissingTrack skipMissing ();
+  
   /**
    * @return Implemenations of this class should return an ArrayList containing the TrackFile objects parsed from the
    *         playlist.
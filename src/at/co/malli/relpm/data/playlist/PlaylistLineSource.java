@@ -0,0 +1,49 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * This interface should be implemented by classes which deliver the decoded lines of a playlist file one after the
+ * other. The PlaylistFileReadWorker feeds them to a PlaylistLineParser without keeping the whole file in memory.
+ * @author Dietmar Malli
+ */
+public interface PlaylistLineSource extends Closeable
+{
+  /**
+   * Reads the next line. CR, LF and CRLF end a line and are not part of the returned string.
+   * @return The next line or null if the end of the file was reached.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public String readLine () throws IOException;
+  
+  /**
+   * @return The number of bytes of the file consumed so far. It is used to display the progress.
+   */
+  public long getBytesRead ();
+  
+  /**
+   * @return The length of the file in bytes.
+   */
+  public long getLength ();
+
+
+}
@@ -19,7 +19,6 @@ package at.co.malli.relpm.data.playlist;
 
 import at.co.malli.relpm.data.ResourceUtils;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 
@@ -39,7 +38,7 @@ public interface PlaylistLineWriter
    *         not be transalted into a relative path. This will occur if the path of the playlist is for example on C:\
    *         and the referenced track on D:\
    */
-  public void writeTrackFile (BufferedWriter w, File playlist, TrackFile track) throws IOException, ResourceUtils.PathResolutionException;
+  public void writeTrackFile (Appendable w, File playlist, TrackFile track) throws IOException, ResourceUtils.PathResolutionException;
   
   /**
    * Implementations should write stuff which needs to be above all track-representing lines. (For example #EXTM3U for
@@ -49,7 +48,7 @@ public interface PlaylistLineWriter
    * @param encoding The encoding in which the playlist is written. XML would need that.
    * @throws java.io.IOException If an error occured during writing to the stream.
    */
-  public void writeIntro (BufferedWriter w, File playlist, String encoding) throws IOException;
+  public void writeIntro (Appendable w, File playlist, String encoding) throws IOException;
   
   /**
    * Implementations should write stuff which needs to under all track-representing lines.
@@ -58,5 +57,5 @@ public interface PlaylistLineWriter
    * @param encoding The encoding in which the playlist is written.
    * @throws java.io.IOException If an error occured during writing to the stream.
    */
-  public void writeOutro (BufferedWriter w, File playlist, String encoding) throws IOException;
+  public void writeOutro (Appendable w, File playlist, String encoding) throws IOException;
 }
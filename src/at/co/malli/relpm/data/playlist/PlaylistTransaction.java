@@ -0,0 +1,272 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.relpm.data.SettingsProvider;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Instances of this class write one or more playlist files so that a crash never leaves a half written file behind.
+ * Every file is written into a temporary file next to it. Only when all of them are complete, they are moved over
+ * their targets by commit(). How the data is forced onto the storage device is set in data.export.fsync:
+ * <ul>
+ * <li>SYNC: The temporary files are forced before they are moved and the directories afterwards.</li>
+ * <li>BACKGROUND: The files are moved at once and forced by a background thread afterwards. The save returns
+ * earlier, but a power loss right after it may still cost the new contents on some file systems.</li>
+ * <li>NONE: Nothing is forced. The operating system writes the data whenever it wants to.</li>
+ * </ul>
+ * @author Dietmar Malli
+ */
+public class PlaylistTransaction implements Closeable
+{
+  private static final Logger logger = LogManager.getLogger(PlaylistTransaction.class.getName());
+
+  public static final String FSYNC_SYNC = "SYNC";
+  public static final String FSYNC_BACKGROUND = "BACKGROUND";
+  public static final String FSYNC_NONE = "NONE";
+  public static final String TEMP_SUFFIX = ".tmp";
+
+  private static volatile ExecutorService syncExecutor = null;
+
+  private final String fsync;
+  private final int bufferSize;
+  private final ArrayList<File> targets = new ArrayList<>();
+  private final ArrayList<File> temps = new ArrayList<>();
+  private final ArrayList<PlaylistChannelWriter> writers = new ArrayList<>();
+  private final ArrayList<File> deletions = new ArrayList<>();
+  private boolean committed = false;
+
+
+  /**
+   * Creates a transaction using the settings data.export.fsync and data.export.bufferSize.
+   */
+  public PlaylistTransaction ()
+  {
+    this(SettingsProvider.getInstance().getString("data.export.fsync"),
+         SettingsProvider.getInstance().getInt("data.export.bufferSize"));
+  }
+
+  /**
+   * @param fsync One of the constants FSYNC_SYNC, FSYNC_BACKGROUND and FSYNC_NONE. Unknown values are treated like
+   *              FSYNC_SYNC.
+   * @param bufferSize The size of the direct buffer each file is encoded into before it is handed to its channel.
+   */
+  public PlaylistTransaction (String fsync, int bufferSize)
+  {
+    if(!FSYNC_BACKGROUND.equals(fsync) && !FSYNC_NONE.equals(fsync))
+      fsync = FSYNC_SYNC;
+    this.fsync = fsync;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Creates the temporary file for a target and opens a writer for it. The target itself isn't touched before
+   * commit().
+   * @param target The file which should be written.
+   * @param charset The charset used to encode the text appended to the writer.
+   * @return The writer. It is finished and closed by commit() or close(). Its channel is readable, so ranges of it can
+   *         be copied into other files of the transaction with PlaylistChannelWriter.copyTo().
+   * @throws IOException if the temporary file can't be created.
+   */
+  public PlaylistChannelWriter open (File target, Charset charset) throws IOException
+  {
+    if(committed)
+      throw new IllegalStateException("The transaction was already committed");
+    File temp = new File(target.getAbsolutePath() + TEMP_SUFFIX);
+    FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    PlaylistChannelWriter writer = new PlaylistChannelWriter(channel, charset, bufferSize);
+    targets.add(target.getAbsoluteFile());
+    temps.add(temp);
+    writers.add(writer);
+    return writer;
+  }
+
+  /**
+   * Marks a file to be deleted by commit(), for instance an export which no longer applies. Nothing happens to it if
+   * the transaction isn't committed.
+   * @param target The file which should be deleted. It's fine if it doesn't exist.
+   */
+  public void delete (File target)
+  {
+    if(committed)
+      throw new IllegalStateException("The transaction was already committed");
+    deletions.add(target.getAbsoluteFile());
+  }
+
+  /**
+   * Finishes all writers, deletes the files marked by delete() and moves the temporary files over their targets. The
+   * files are moved in the reverse order in which they were opened, so the first one, usually the playlist itself, is
+   * replaced last.
+   * @throws IOException if writing, deleting or moving fails. Files which weren't moved yet are left untouched.
+   */
+  public void commit () throws IOException
+  {
+    for(PlaylistChannelWriter writer : writers)
+    {
+      if(fsync.equals(FSYNC_SYNC))
+        writer.sync();
+      else
+        writer.finish();
+      writer.close();
+    }
+    committed = true;
+    for(File deletion : deletions)
+      Files.deleteIfExists(deletion.toPath());
+    ArrayList<File> changed = new ArrayList<>(targets);
+    changed.addAll(deletions);
+    for(int i = temps.size() - 1; i >= 0; i--)
+    {
+      move(temps.get(i).toPath(), targets.get(i).toPath());
+      temps.remove(i);
+    }
+    switch(fsync)
+    {
+      case FSYNC_SYNC:
+        forceDirectories(changed);
+      break;
+      case FSYNC_BACKGROUND:
+        final ArrayList<File> toForce = new ArrayList<>(targets);
+        final ArrayList<File> directoriesToForce = changed;
+        getSyncExecutor().submit(new Runnable()
+        {
+          @Override
+          public void run ()
+          {
+            for(File target : toForce)
+            {
+              try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE))
+              {
+                channel.force(true);
+              }
+              catch (IOException ex)
+              {
+                logger.error("Could not force " + target + " onto the disk: " + ex.getMessage());
+              }
+            }
+            forceDirectories(directoriesToForce);
+          }
+        });
+      break;
+    }
+  }
+
+  private static void move (Path from, Path to) throws IOException
+  {
+    try
+    {
+      Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException ex)
+    {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Forces the directory entries created by the moves onto the disk. Not every platform allows to open a directory,
+   * so failures are only logged.
+   */
+  private static void forceDirectories (ArrayList<File> files)
+  {
+    ArrayList<File> done = new ArrayList<>();
+    for(File file : files)
+    {
+      File dir = file.getParentFile();
+      if(dir == null || done.contains(dir))
+        continue;
+      done.add(dir);
+      try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ))
+      {
+        channel.force(true);
+      }
+      catch (IOException ex)
+      {
+        logger.trace("Could not force directory " + dir + ": " + ex.getMessage());
+      }
+    }
+  }
+
+  private static ExecutorService getSyncExecutor ()
+  {
+    if(syncExecutor == null)
+    {
+      synchronized(PlaylistTransaction.class)
+      {
+        if(syncExecutor == null)
+        {
+          syncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+          {
+            @Override
+            public Thread newThread (Runnable r)
+            {
+              Thread t = new Thread(r, "PlaylistTransaction-Sync");
+              t.setDaemon(true); //Must never keep the application alive...
+              return t;
+            }
+          });
+        }
+      }
+    }
+    return syncExecutor;
+  }
+
+  /**
+   * Closes all writers and deletes the temporary files which weren't moved by commit(). Calling this after a
+   * successful commit() does nothing.
+   */
+  @Override
+  public void close ()
+  {
+    if(committed && temps.isEmpty())
+      return;
+    for(PlaylistChannelWriter writer : writers)
+    {
+      try
+      {
+        writer.close();
+      }
+      catch (IOException ex)
+      {
+        logger.trace("Could not close a temporary playlist file: " + ex.getMessage());
+      }
+    }
+    for(File temp : temps)
+    {
+      if(temp.exists() && !temp.delete())
+        logger.error("Could not delete " + temp);
+    }
+    temps.clear();
+  }
+}
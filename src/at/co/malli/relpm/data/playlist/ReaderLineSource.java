@@ -0,0 +1,82 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import org.apache.commons.io.input.CountingInputStream;
+
+
+/**
+ * Instances of this class read the lines of a playlist through a BufferedReader. This works for every charset and is
+ * used for small files and for encodings in which a line break isn't a single byte. (for example UTF-16)
+ * @author Dietmar Malli
+ */
+public class ReaderLineSource implements PlaylistLineSource
+{
+  private final CountingInputStream counter;
+  private final BufferedReader reader;
+  private final long length;
+
+
+  /**
+   * @param file The playlist file to read.
+   * @param charset The charset used to decode the file.
+   * @param bomLength The number of bytes of a byte order mark which are skipped before decoding starts.
+   * @throws IOException if an I/O-Exception occurs.
+   */
+  public ReaderLineSource (File file, Charset charset, int bomLength) throws IOException
+  {
+    this.length = file.length();
+    this.counter = new CountingInputStream(new FileInputStream(file));
+    this.reader = new BufferedReader(new InputStreamReader(counter, charset));
+    counter.skip(bomLength);
+  }
+
+  @Override
+  public String readLine () throws IOException
+  {
+    return reader.readLine();
+  }
+
+  /**
+   * @return The number of bytes handed to the decoder. The reader buffers ahead, so this is a bit more than the bytes
+   *         of the lines returned so far.
+   */
+  @Override
+  public long getBytesRead ()
+  {
+    return Math.min(counter.getByteCount(), length);
+  }
+
+  @Override
+  public long getLength ()
+  {
+    return length;
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    reader.close();
+  }
+}
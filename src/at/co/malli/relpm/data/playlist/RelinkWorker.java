@@ -0,0 +1,186 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.data.playlist;
+
+import at.co.malli.lib.data.FolderIndex;
+import at.co.malli.lib.gui.ExceptionDisplayer;
+import at.co.malli.lib.gui.ProgressDialog;
+import at.co.malli.lib.gui.ProgressSampler;
+import at.co.malli.lib.status.StatusNotifier;
+import at.co.malli.relpm.data.SettingsProvider;
+import at.co.malli.relpm.data.audiofiles.TagCache;
+import at.co.malli.relpm.data.audiofiles.TrackFileList;
+import at.co.malli.relpm.gui.MainGUI;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Searches the tracks of a playlist which weren't found while parsing in a folder chosen by the user. The folder tree
+ * is read only once into a FolderIndex, then every missing track is matched by its file name and the size the file
+ * had when its tags were cached. Tracks which were never cached are matched by a unique name only.
+ * @author Dietmar Malli
+ */
+public class RelinkWorker extends SwingWorker<Integer,Integer> //Relinked tracks,states
+{
+  private static final Logger logger = LogManager.getLogger(RelinkWorker.class.getName());
+  
+  public static final int STATE_SCANNING = -1;
+  public static final int STATE_RELINKING = 0; //Relinked tracks are shown by the ProgressSampler...
+  
+  private final MainGUI mainGui;
+  private final TrackFileList list;
+  private final List<MissingTrack> missing;
+  private final File folder;
+  
+  private final ProgressDialog prog;
+  private final ProgressSampler progress;
+
+  /**
+   * @param reference A reference to the MainGUI which gets the result.
+   * @param list The list the tracks are missing in.
+   * @param missing The tracks which weren't found.
+   * @param folder The folder the user chose to search in.
+   */
+  public RelinkWorker (MainGUI reference, TrackFileList list, List<MissingTrack> missing, File folder)
+  {
+    this.mainGui = reference;
+    this.list = list;
+    this.missing = missing;
+    this.folder = folder;
+    this.prog = new ProgressDialog(null, false); //must not be modal because of being called in edt...
+    this.progress = new ProgressSampler(prog);
+    this.progress.start();
+  }
+
+  @Override
+  protected Integer doInBackground () throws Exception
+  {
+    publish(STATE_SCANNING);
+    HashSet<String> names = new HashSet<>();
+    for(MissingTrack track : missing)
+      names.add(track.getName());
+    FolderIndex index = FolderIndex.scan(folder, names, SettingsProvider.getInstance().getInt("data.import.relinkThreads"));
+    publish(STATE_RELINKING);
+    int relinked = 0;
+    for(int i = 0; i < missing.size(); i++)
+    {
+      if(prog.isPressedCancel())
+        throw new Exception("The user closed the relinking dialog...");
+      MissingTrack track = missing.get(i);
+      FolderIndex.Entry found = choose(track, index.get(track.getName()));
+      if(found != null)
+      {
+        try
+        {
+          track.relink(found.getFile());
+          relinked++;
+        }
+        catch (Exception ex)
+        {
+          logger.warn("Could not relink " + track.getPath() + " to " + found.getFile() + ": " + ex.getMessage());
+        }
+      }
+      progress.set(i + 1);
+    }
+    return relinked;
+  }
+
+  /**
+   * Picks the file a missing track was moved to. If the TagCache knows the size of the missing file, only a file with
+   * the same name and size is taken. Otherwise the name has to be unique.
+   * @param track The missing track.
+   * @param candidates The files with the same name.
+   * @return The file or null if there is none or it's ambiguous.
+   */
+  private static FolderIndex.Entry choose (MissingTrack track, List<FolderIndex.Entry> candidates)
+  {
+    if(candidates.isEmpty())
+      return null;
+    long size = TagCache.getInstance().getCachedSize(track.getFormerFile());
+    if(size < 0) //Only the name is known...
+      return (candidates.size() == 1 ? candidates.get(0) : null);
+    FolderIndex.Entry found = null;
+    for(FolderIndex.Entry candidate : candidates)
+    {
+      if(candidate.getSize() == size)
+      {
+        if(found != null)
+          return null; //Even the size doesn't tell them apart...
+        found = candidate;
+      }
+    }
+    if(found == null)
+      logger.debug(candidates.size() + " files are named like " + track.getPath() + ", none of them can be chosen");
+    return found;
+  }
+
+  @Override
+  protected void process (List<Integer> chunks)
+  {
+    for(int state : chunks)
+    {
+      switch(state)
+      {
+        case STATE_SCANNING:
+          prog.setText("Searching " + folder.getName() + " for " + missing.size() + " missing files");
+          prog.setMaximum(missing.size());
+          progress.reset(0);
+          prog.setVisible(true);
+        break;
+        case STATE_RELINKING:
+          prog.setText("Relinking " + missing.size() + " missing files");
+          progress.reset(0);
+          prog.setVisible(true);
+        break;
+      }
+    }
+  }
+
+  @Override
+  protected void done ()
+  {
+    progress.stop();
+    prog.dispose();
+    try
+    {
+      int relinked = get();
+      logger.trace("Relinked " + relinked + " of " + missing.size() + " missing tracks...");
+      StatusNotifier.getInstance().fireStatusEvent(this, "Found " + relinked + " of " + missing.size() +
+                                                   " missing files in " + folder.getName() + "...");
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      StatusNotifier.getInstance().fireStatusEvent(this, cause.getMessage());
+      logger.trace(cause.getMessage());
+    }
+    catch (Exception ex)
+    {
+      logger.error(ex.getMessage());
+      ExceptionDisplayer.showErrorMessage(ex);
+    }
+    mainGui.handleRelinkWorkerOutput(list, missing); //Inserts the relinked ones, even if the user cancelled...
+  }
+}
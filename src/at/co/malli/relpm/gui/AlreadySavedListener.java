@@ -17,6 +17,8 @@
  */
 package at.co.malli.relpm.gui;
 
+import at.co.malli.relpm.data.playlist.PlaylistFileReadWorker;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
@@ -34,21 +36,55 @@ public class AlreadySavedListener implements ListDataListener{
   @Override
   public void intervalAdded (ListDataEvent e)
   {
-    reference.handleWriteWorkerOutput(false);
+    if(isRead(e))
+      return; //The list is still being read...
+    reference.listEdited();
+    compactLater();
   }
 
 
   @Override
   public void intervalRemoved (ListDataEvent e)
   {
-    reference.handleWriteWorkerOutput(false);
+    reference.listEdited();
+    compactLater();
+  }
+
+
+  /**
+   * @param e An event of the list.
+   * @return True if the event comes from reading the list or its tags instead of an edit.
+   */
+  private static boolean isRead (ListDataEvent e)
+  {
+    return (e.getSource() instanceof PlaylistFileReadWorker || e.getSource() instanceof TagHydrator);
+  }
+
+
+  /**
+   * Lets MainGUI check the journal once the current edit is complete. Single rows are still removed one event at a
+   * time by some callers, and the list must not be saved in between.
+   */
+  private void compactLater ()
+  {
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      @Override
+      public void run ()
+      {
+        reference.compactJournal();
+      }
+    });
   }
 
 
   @Override
   public void contentsChanged (ListDataEvent e)
   {
-    reference.handleWriteWorkerOutput(false);
+    if(isRead(e))
+      return; //Only tags were read. Saving writes them anyway...
+    reference.listEdited(); //Files were moved...
+    compactLater();
   }
   
 }
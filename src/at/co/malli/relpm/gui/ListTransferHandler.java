@@ -18,6 +18,7 @@
 package at.co.malli.relpm.gui;
 
 
+import at.co.malli.lib.data.DirectoryListingCache;
 import at.co.malli.lib.data.FileHelpers;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
 import at.co.malli.lib.status.StatusNotifier;
@@ -27,7 +28,6 @@ import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JList;
@@ -74,11 +74,7 @@ public class ListTransferHandler extends TransferHandler
   @Override
   protected Transferable createTransferable(JComponent c)
   {
-    ArrayList<Integer> indices = new ArrayList<>();
-    int[] selectedIndices = list.getSelectedIndices();
-    for(int val : selectedIndices)
-      indices.add(val);
-    return new DraggedIndices(indices);
+    return new DraggedIndices(list.getSelectedIndices()); //Already in ascending order...
   }
   
   /**
@@ -117,41 +113,12 @@ public class ListTransferHandler extends TransferHandler
       DataFlavor[] transferDataFlavors = t.getTransferDataFlavors();
       if(transferDataFlavors[0]==DraggedIndices.dataFlavor) //A list object was dragged...
       {
-        ArrayList<Integer> indices = (ArrayList<Integer>) t.getTransferData(DraggedIndices.dataFlavor);
-        if(indices.isEmpty())
-          System.out.println("EMPTY");
-
-        boolean isLast = false;
-        TrackFile beforeWhichToInsert = null; //maybe not needed...
-        if(dl.getIndex() >= list.getModel().getSize())
-        {
-          isLast=true;
-        }
-        else
-        {
-          TrackFile objectAfterDropIndex = model.getElementAt(dl.getIndex());
-          int indexOfObjectAfterDropIndex = dl.getIndex();
-
-          int i=indexOfObjectAfterDropIndex;
-          while(indices.contains(i))
-            i++;
-          beforeWhichToInsert = model.getElementAt(i);
-        }
-
-        Collections.sort(indices);
-        Collections.reverse(indices); //Biggest to smallest.. everything else would destroy the indices while removing...
-        ArrayList<TrackFile> elements = new ArrayList<>();
-        for(int val : indices)
-          elements.add(model.remove(val));
-        Collections.reverse(elements); //old ordering...
-
-        //Find the new index of the object which should be after the inserted elements:
-        int newIndex;
-        if(isLast)
-          newIndex = model.getSize();
-        else
-          newIndex = model.indexOf(beforeWhichToInsert);
-        model.add(newIndex, elements);
+        int[] indices = (int[]) t.getTransferData(DraggedIndices.dataFlavor);
+        if(indices.length == 0)
+          return false;
+        //Compacts the list once and inserts in front of the first unselected file at or after the drop location...
+        int first = model.moveIndices(indices, dl.getIndex());
+        list.setSelectionInterval(first, first + indices.length - 1);
       }
       else //A File was dragged onto the list...
             {
@@ -161,7 +128,8 @@ public class ListTransferHandler extends TransferHandler
         {
           if(FileHelpers.getExtension(item).toLowerCase().equals("mp3"))
           {
-            TrackFile current = new TrackFile(model.getPlaylist(), item.getAbsolutePath());
+            TrackFile current = new TrackFile(model.getPlaylist(), item.getAbsolutePath(),
+                                              DirectoryListingCache.getInstance());
             current.parseTagsFromFile();
             elements.add(current);
           }
@@ -197,14 +165,14 @@ public class ListTransferHandler extends TransferHandler
   
   private static class DraggedIndices implements Transferable
   {
-    private final ArrayList<Integer> values;
+    private final int[] values;
     private static final DataFlavor dataFlavor = new DataFlavor(DraggedIndices.class,"DraggedIndices");
 
     /**
      * Instances of this class represent the selected elements from the jList which are being dragged.
-     * @param values ArrayList of Integer values.
+     * @param values The selected indices in ascending order.
      */
-    public DraggedIndices (ArrayList<Integer> values)
+    public DraggedIndices (int[] values)
     {
       this.values = values;
     }
@@ -232,7 +200,7 @@ public class ListTransferHandler extends TransferHandler
 
     /**
      * @param flavor The type of data requested by the caller. Note: Only "DraggedIndices" is supported by this class...
-     * @return ArrayList of Integer values which are being dragged.
+     * @return The indices which are being dragged in ascending order.
      * @throws UnsupportedFlavorException if the supplied dataFlavor isn't supported by this class.
      * @throws IOException in no case. This is only required by the Interface.
      */
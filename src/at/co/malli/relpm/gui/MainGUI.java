@@ -17,6 +17,7 @@
  */
 package at.co.malli.relpm.gui;
 
+import at.co.malli.lib.data.DirectoryListingCache;
 import at.co.malli.lib.gui.ExceptionDisplayer;
 import at.co.malli.lib.gui.StatusBar;
 import at.co.malli.relpm.RelPM;
@@ -24,7 +25,10 @@ import at.co.malli.relpm.data.ResourceUtils;
 import at.co.malli.relpm.data.SettingsProvider;
 import at.co.malli.relpm.data.audiofiles.TrackFile;
 import at.co.malli.relpm.data.audiofiles.TrackFileList;
+import at.co.malli.relpm.data.playlist.EditJournal;
+import at.co.malli.relpm.data.playlist.MissingTrack;
 import at.co.malli.relpm.data.playlist.PlaylistFileReadWorker;
+import at.co.malli.relpm.data.playlist.RelinkWorker;
 import at.co.malli.lib.status.StatusListenerInterface;
 import at.co.malli.lib.status.StatusNotifier;
 import at.co.malli.relpm.data.playlist.PlaylistFileWriteWorker;
@@ -36,7 +40,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -66,6 +71,15 @@ public class MainGUI extends javax.swing.JFrame
   private boolean alreadySaved = false;
   private boolean cameFromClose = false;
   private boolean cameFromShutdown = false;
+  private EditJournal.Recovery pendingRecovery = null; //Edits to replay onto the list which is being read...
+  private PlaylistFileWriteWorker saveWorker = null;   //The running save. Saves never run at the same time...
+  private boolean savePending = false;                 //The user saved while another save was running...
+  private boolean compactBlocked = false;              //A background save failed, wait for one of the user...
+  private int journalMark = 0;                         //Number of journal records when the running save started...
+  private int saveEdits = 0;                           //Edit count of the list when the running save started...
+  private TagHydrator hydrator = null;                 //Reads the deferred tags of the opened list...
+  private boolean reading = false;                     //The list is shown while its tail is still being read...
+  private PlaylistFileReadWorker readWorker = null;    //The worker which read the opened list last...
   
   public MainGUI ()
   {
@@ -134,10 +148,62 @@ public class MainGUI extends javax.swing.JFrame
     jList.setModel(listModel);
     jList.setTransferHandler(new ListTransferHandler(jList));
     updateButtonStates();
+    if(SettingsProvider.getInstance().getBoolean("data.journal.enabled"))
+    {
+      java.awt.EventQueue.invokeLater(new Runnable()
+      {
+        @Override
+        public void run ()
+        {
+          offerJournalRecovery(); //After the window is shown...
+        }
+      });
+    }
     
     logger.trace("initialized");
   }
 
+  /**
+   * Offers to restore the edits of a journal left behind by a crash. If the user agrees, the playlist the edits are
+   * based on is read and the edits are replayed in handleReadWorkerOutput().
+   */
+  private void offerJournalRecovery ()
+  {
+    EditJournal.Recovery recovery = EditJournal.findRecovery();
+    if(recovery == null)
+      return;
+    String name = recovery.getBase().getName();
+    if(!recovery.isBaseUnchanged())
+    {
+      JOptionPane.showMessageDialog(null, "RelPM wasn't closed properly, but " + name + " changed since then. The "
+                                    + recovery.getRecordCount() + " unsaved changes can't be restored.",
+                                    "Unsaved changes", JOptionPane.WARNING_MESSAGE);
+      EditJournal.delete();
+      return;
+    }
+    int user = JOptionPane.showConfirmDialog(null, "RelPM wasn't closed properly. Would you like to restore the "
+                                             + recovery.getRecordCount() + " unsaved changes to " + name + "?",
+                                             "Unsaved changes", JOptionPane.YES_NO_OPTION);
+    if(user != JOptionPane.YES_OPTION)
+    {
+      EditJournal.delete();
+      return;
+    }
+    pendingRecovery = recovery;
+    lastFile = recovery.getBase();
+    lastSave = (recovery.isSaveTarget() ? lastFile : null);
+    readPlaylist();
+  }
+
+  /**
+   * Starts reading lastFile in the background.
+   */
+  private void readPlaylist ()
+  {
+    readWorker = new PlaylistFileReadWorker(this, lastFile);
+    readWorker.execute();
+  }
+
   /**
    * Opens a playlist.
    */
@@ -161,15 +227,15 @@ public class MainGUI extends javax.swing.JFrame
       return;
     }
     SettingsProvider.getInstance().set("gui.lastFile", lastFile.getAbsoluteFile());
-    PlaylistFileReadWorker readWorker = new PlaylistFileReadWorker(this, lastFile);
-    readWorker.execute();
+    readPlaylist();
   }
   
   /**
    * This method is intended to be called by the done() method of the swing worker which parses playlist files.
    * @param output The parsed data as TrackFileList.
+   * @param missing The tracks which weren't found. They aren't in output.
    */
-  public void handleReadWorkerOutput (TrackFileList output)
+  public void handleReadWorkerOutput (TrackFileList output, List<MissingTrack> missing)
   {
     //<editor-fold defaultstate="collapsed" desc="Maybe implement multi-tabbing here later some time by adding to a tabbed pane in the center..">
 //    TrackFileListModel listModel = new TrackFileListModel(output);
@@ -180,11 +246,278 @@ public class MainGUI extends javax.swing.JFrame
 //    pack();
     //</editor-fold>
     
+    int recovered = 0;
+    EditJournal.Recovery recovery = pendingRecovery;
+    pendingRecovery = null;
+    if(recovery != null && !output.getPlaylist().getAbsoluteFile().equals(recovery.getBase().getAbsoluteFile()))
+      recovery = null; //Another list was opened meanwhile...
+    if(recovery != null && !Arrays.equals(recovery.getOmitted(), omittedIndices(missing)))
+    {
+      StatusNotifier.getInstance().fireStatusEvent(this, "The unsaved changes can't be restored, as other files of "
+                                                   + "the list were found than before...");
+      recovery = null; //The recorded positions only fit a list which lacks the same tracks...
+    }
+    if(recovery != null)
+    {
+      recovered = recovery.replay(output);
+      StatusNotifier.getInstance().fireStatusEvent(this, "Restored " + recovered + " of " +
+                                                   recovery.getRecordCount() + " unsaved changes...");
+    }
+    
     listModel.addInitial(output);
     jScroll.setVisible(true);
     jList.setVisible(true);
     updateButtonStates();
-    alreadySaved = true;
+    alreadySaved = (recovered == 0);
+    startJournal(recovery, recovered);
+    journalOmitted(missing);
+    startTagHydrator();
+    handleMissingTracks(output, missing);
+  }
+  
+  /**
+   * This method is called on the EDT by the swing worker which parses playlist files, while it is still parsing. The
+   * first batch opens the list, so the user can already work with its head.
+   * @param source The worker which reads the list.
+   * @param playlistFile The playlist which is read.
+   * @param tracks The next parsed tracks. They are taken out of the ArrayList.
+   * @return False if the list can't be shown before it was read completely. handleReadWorkerOutput() is called with
+   *         the whole list then.
+   */
+  public boolean handleReadWorkerBatch (PlaylistFileReadWorker source, File playlistFile, ArrayList<TrackFile> tracks)
+  {
+    if(!reading)
+    {
+      if(pendingRecovery != null || jList.isVisible()) //Recovered edits must be replayed onto the complete list...
+        return false;
+      reading = true;
+      listModel.addInitial(new TrackFileList(new ArrayList<TrackFile>(), playlistFile));
+      jScroll.setVisible(true);
+      jList.setVisible(true);
+      updateButtonStates();
+      alreadySaved = true;
+      startJournal(null, 0); //Edits of the head are recorded while the tail is still being read...
+    }
+    listModel.addRead(source, tracks);
+    return true;
+  }
+  
+  /**
+   * This method is called by the done() method of the swing worker which parses playlist files if the list was
+   * already shown by handleReadWorkerBatch(). Every track was handed over by then.
+   * @param source The worker which read the list.
+   * @param missing The tracks which weren't found. They aren't in the list.
+   */
+  public void handleReadWorkerFinished (PlaylistFileReadWorker source, List<MissingTrack> missing)
+  {
+    reading = false;
+    if(listModel.getSize() > 0)
+      listModel.tagsRead(source, 0, listModel.getSize() - 1); //The TagReadPool finished after the last batch...
+    updateButtonStates();
+    journalOmitted(missing); //The edits made while reading didn't know about them either...
+    startTagHydrator();
+    handleMissingTracks(listModel.getList(), missing);
+  }
+  
+  /**
+   * @param missing The tracks which weren't found while reading the list.
+   * @return For each of them the number of found tracks in front of it.
+   */
+  private static int[] omittedIndices (List<MissingTrack> missing)
+  {
+    int[] indices = new int[missing.size()];
+    for(int i = 0; i < indices.length; i++)
+      indices[i] = missing.get(i).getIndex();
+    return indices;
+  }
+  
+  /**
+   * Notes the tracks which weren't found in the journal of the opened list. They are left out of the list unless the
+   * user relinks them, which is journaled as an insertion. The edits are only replayed onto a list which lacks the
+   * same tracks.
+   * @param missing The tracks which weren't found while reading the list.
+   */
+  private void journalOmitted (List<MissingTrack> missing)
+  {
+    EditJournal journal = listModel.getJournal();
+    if(journal == null || missing.isEmpty())
+      return;
+    try
+    {
+      journal.setOmitted(omittedIndices(missing));
+    }
+    catch (IOException ex)
+    {
+      discardJournal(); //Its positions would be applied to the complete list...
+      logger.error("Could not write the edit journal: " + ex.getMessage());
+      StatusNotifier.getInstance().fireStatusEvent(this, "Unsaved changes won't survive a crash: "+ex.getMessage());
+    }
+  }
+  
+  /**
+   * Offers to search the tracks which weren't found in a folder. Otherwise they are left out of the list.
+   * @param list The opened list.
+   * @param missing The tracks which weren't found.
+   */
+  private void handleMissingTracks (TrackFileList list, List<MissingTrack> missing)
+  {
+    if(missing.isEmpty())
+      return;
+    StringBuilder names = new StringBuilder();
+    for(int i = 0; i < missing.size() && i < 5; i++)
+      names.append("\n").append(missing.get(i).getPath());
+    if(missing.size() > 5)
+      names.append("\n...");
+    int user = JOptionPane.showConfirmDialog(this, missing.size() + " files of the list were not found:" + names +
+                                             "\n\nWould you like to choose a folder in which they are searched?",
+                                             "Files not found", JOptionPane.YES_NO_OPTION);
+    if(user == JOptionPane.YES_OPTION)
+    {
+      JFileChooser chooser = new JFileChooser();
+      chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+      chooser.setCurrentDirectory(list.getPlaylist().getAbsoluteFile().getParentFile());
+      if(chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+      {
+        new RelinkWorker(this, list, missing, chooser.getSelectedFile()).execute();
+        return;
+      }
+    }
+    alreadySaved = false; //The list differs from the file now...
+    StatusNotifier.getInstance().fireStatusEvent(this, missing.size() + " files which were not found are left out...");
+  }
+  
+  /**
+   * This method is called by the done() method of the swing worker which relinks missing tracks. The relinked ones
+   * are inserted in front of the track which followed them in the playlist, the others are offered again.
+   * @param list The list the tracks are missing in.
+   * @param missing The missing tracks. getResolved() returns the relinked track or null.
+   */
+  public void handleRelinkWorkerOutput (TrackFileList list, List<MissingTrack> missing)
+  {
+    if(!jList.isVisible() || listModel.getList() != list) //Closed meanwhile...
+      return;
+    ArrayList<MissingTrack> unresolved = new ArrayList<>();
+    ArrayList<TrackFile> run = new ArrayList<>();
+    TrackFile anchor = null;
+    for(MissingTrack track : missing)
+    {
+      if(track.getResolved() == null)
+      {
+        unresolved.add(track);
+        continue;
+      }
+      if(!run.isEmpty() && track.getAnchor() != anchor)
+        insertRelinked(run, anchor);
+      anchor = track.getAnchor();
+      run.add(track.getResolved());
+    }
+    if(!run.isEmpty())
+      insertRelinked(run, anchor);
+    handleMissingTracks(list, unresolved);
+  }
+  
+  /**
+   * @param tracks Relinked tracks which followed each other in the playlist. The ArrayList is empty afterwards.
+   * @param anchor The track they belong in front of or null for the end of the list.
+   */
+  private void insertRelinked (ArrayList<TrackFile> tracks, TrackFile anchor)
+  {
+    int index = (anchor == null ? -1 : listModel.indexOf(anchor));
+    if(index < 0) //At the end or the anchor was removed meanwhile...
+      index = listModel.getSize();
+    listModel.add(index, tracks);
+  }
+  
+  /**
+   * This method is called by the done() method of the swing worker which parses playlist files if reading failed
+   * after the list was already shown by handleReadWorkerBatch(). The incomplete list is closed.
+   */
+  public void handleReadWorkerAborted ()
+  {
+    if(!reading)
+      return;
+    reading = false;
+    closeListFinally();
+  }
+  
+  /**
+   * Starts reading the deferred tags of the opened list in the background if data.import.lazyTags is set.
+   */
+  private void startTagHydrator ()
+  {
+    if(SettingsProvider.getInstance().getBoolean("data.import.lazyTags"))
+    {
+      hydrator = new TagHydrator(listModel, jList, jScroll.getViewport(),
+                                 SettingsProvider.getInstance().getInt("data.import.tagReaderThreads"));
+      hydrator.start();
+    }
+  }
+  
+  /**
+   * Starts recording the edits of the list which was just opened.
+   * @param recovery The recovered journal whose edits were replayed onto the list or null.
+   * @param recovered The number of replayed edits.
+   */
+  private void startJournal (EditJournal.Recovery recovery, int recovered)
+  {
+    if(!SettingsProvider.getInstance().getBoolean("data.journal.enabled"))
+      return;
+    try
+    {
+      if(recovery != null)
+        listModel.setJournal(recovery.resume(recovered));
+      else
+        listModel.setJournal(EditJournal.start(lastFile, lastSave != null));
+    }
+    catch (IOException ex)
+    {
+      listModel.setJournal(null);
+      logger.error("Could not start the edit journal: " + ex.getMessage());
+      StatusNotifier.getInstance().fireStatusEvent(this, "Unsaved changes won't survive a crash: "+ex.getMessage());
+    }
+  }
+  
+  /**
+   * Saves the list in the background once enough edits were recorded in the journal, so it never gets long. This only
+   * happens if the user already chose where the list is saved and no other save is running. Nothing is shown or asked
+   * by this save. If it fails, the journal is only compacted again after the user saved.
+   */
+  public void compactJournal ()
+  {
+    EditJournal journal = listModel.getJournal();
+    if(journal == null || lastSave == null || reading || compactBlocked || saveWorker != null)
+      return;
+    if(journal.getRecordCount() < SettingsProvider.getInstance().getInt("data.journal.compactRecords"))
+      return;
+    logger.trace("Compacting " + journal.getRecordCount() + " journal records into " + lastSave);
+    startSave(true);
+  }
+  
+  /**
+   * Starts writing the list to lastSave. The worker writes a copy of the list taken right here, so it can be edited
+   * meanwhile.
+   * @param background True if the user didn't start the save.
+   */
+  private void startSave (boolean background)
+  {
+    EditJournal journal = listModel.getJournal();
+    journalMark = (journal != null ? journal.getRecordCount() : 0);
+    saveEdits = listModel.getList().getEditCount();
+    saveWorker = new PlaylistFileWriteWorker(this, listModel.getList(), lastSave, background);
+    saveWorker.execute();
+  }
+  
+  /**
+   * Closes and deletes the journal of the opened list if there is one.
+   */
+  private void discardJournal ()
+  {
+    EditJournal journal = listModel.getJournal();
+    if(journal != null)
+    {
+      journal.discard();
+      listModel.setJournal(null);
+    }
   }
   
   /**
@@ -225,8 +558,7 @@ public class MainGUI extends javax.swing.JFrame
     }
     SettingsProvider.getInstance().set("gui.lastFile", lastSave.getAbsoluteFile());
     
-    PlaylistFileReadWorker readWorker = new PlaylistFileReadWorker(this, lastFile);
-    readWorker.execute();
+    readPlaylist();
   }
   
   /**
@@ -262,7 +594,7 @@ public class MainGUI extends javax.swing.JFrame
     {
       ArrayList<TrackFile> elements = new ArrayList<>();
       for(File item : selectedFiles)
-        elements.add(new TrackFile(listModel.getPlaylist(),item.getAbsolutePath()));
+        elements.add(new TrackFile(listModel.getPlaylist(),item.getAbsolutePath(),DirectoryListingCache.getInstance()));
       listModel.add(jList.getSelectedIndex(),elements);
     }
     catch(FileNotFoundException | ResourceUtils.PathResolutionException e)
@@ -282,14 +614,7 @@ public class MainGUI extends javax.swing.JFrame
       StatusNotifier.getInstance().fireStatusEvent(this, "No File from list selected...");
       return;
     }
-    int[] selectedIndices = jList.getSelectedIndices();
-    ArrayList<Integer> indices = new ArrayList<>();
-    for(int val : selectedIndices)
-      indices.add(val);
-    Collections.sort(indices);
-    Collections.reverse(indices);
-    for(int val : indices)
-      listModel.remove(val);
+    listModel.removeIndices(jList.getSelectedIndices()); //Ascending, one event for all of them...
   }
   
   /**
@@ -299,6 +624,11 @@ public class MainGUI extends javax.swing.JFrame
    */
   private int savePlaylist (boolean saveAs)
   {
+    if(reading)
+    {
+      StatusNotifier.getInstance().fireStatusEvent(this, "The list is still being read...");
+      return -1;
+    }
     if(saveAs || lastSave==null) //User didn't provide a location yet or call to saveAs will show the dialogue
     {
       JFileChooser chooser = new JFileChooser();
@@ -325,20 +655,69 @@ public class MainGUI extends javax.swing.JFrame
       }
       SettingsProvider.getInstance().set("gui.lastFile", lastSave.getAbsoluteFile());
     }
-    PlaylistFileWriteWorker writeWorker = new PlaylistFileWriteWorker(this, listModel.getList(), lastSave);
-    writeWorker.execute();
+    if(saveWorker != null) //The list is written once more as soon as it's done...
+    {
+      savePending = true;
+      StatusNotifier.getInstance().fireStatusEvent(this, "The list is saved after the running save...");
+      return 0;
+    }
+    startSave(false);
     return 0;
   }
   
+  /**
+   * This method is called by the AlreadySavedListener for every edit of the list.
+   */
+  public void listEdited ()
+  {
+    synchronized(this)
+    {
+      alreadySaved = false;
+    }
+  }
+  
   /**
    * This method will be called by the PlaylistFileWriteWorker... It will inform the GUI wheter writing worked or not...
    * @param b True if everything worked fine.
    */
   public void handleWriteWorkerOutput (boolean b)
   {
-    synchronized(this)
+    PlaylistFileWriteWorker finished = saveWorker;
+    saveWorker = null;
+    if(finished != null && jList.isVisible() && finished.getTrackFileList() == listModel.getList())
+    {
+      synchronized(this)
+      {
+        alreadySaved = b && listModel.getList().getEditCount() == saveEdits; //Not if it was edited meanwhile...
+      }
+      if(finished.isBackground())
+        compactBlocked = !b;
+      else if(b)
+        compactBlocked = false; //The encoding the user chose is known now...
+      EditJournal journal = listModel.getJournal();
+      if(b && journal != null)
+      {
+        try
+        {
+          //Edits recorded while the list was written aren't in the file, so they stay in the journal...
+          journal.rebase(finished.getPlaylistFile(), finished.getPlaylistFile().equals(lastSave), journalMark);
+        }
+        catch (IOException ex)
+        {
+          discardJournal(); //It is based on a file which was just overwritten...
+          logger.error("Could not rebase the edit journal: " + ex.getMessage());
+          StatusNotifier.getInstance().fireStatusEvent(this, "Unsaved changes won't survive a crash: "+ex.getMessage());
+        }
+      }
+    }
+    if(savePending)
     {
-      alreadySaved = b;
+      savePending = false;
+      if(jList.isVisible())
+      {
+        startSave(false); //Closing or shutting down waits for this one...
+        return;
+      }
     }
     if(cameFromClose)
     {
@@ -418,6 +797,13 @@ public class MainGUI extends javax.swing.JFrame
    */
   private void closeListFinally ()
   {
+    discardJournal(); //Saved or dropped by the user...
+    compactBlocked = false;
+    if(hydrator != null)
+    {
+      hydrator.stop();
+      hydrator = null;
+    }
     jList.setVisible(false);
     jScroll.setVisible(false);
     updateButtonStates();
@@ -432,8 +818,8 @@ public class MainGUI extends javax.swing.JFrame
     {
       jButCreate.setEnabled(false);
       jButOpen.setEnabled(false);
-      jButSave.setEnabled(true);
-      jButCloseList.setEnabled(true);
+      jButSave.setEnabled(!reading); //An incomplete list must not be written...
+      jButCloseList.setEnabled(!reading);
       jButInsertSong.setEnabled(true);
       jButRemoveSong.setEnabled(true);
       jButPlay.setEnabled(true);
@@ -444,9 +830,9 @@ public class MainGUI extends javax.swing.JFrame
       jButRandom.setEnabled(true);
       jMenuItemCreate.setEnabled(false);
       jMenuItemOpen.setEnabled(false);
-      jMenuItemSave.setEnabled(true);
-      jMenuItemSaveAs.setEnabled(true);
-      jMenuItemCloseList.setEnabled(true);
+      jMenuItemSave.setEnabled(!reading);
+      jMenuItemSaveAs.setEnabled(!reading);
+      jMenuItemCloseList.setEnabled(!reading);
       jMenuItemInsertSong.setEnabled(true);
       jMenuItemRemoveSong.setEnabled(true);
     }
@@ -474,6 +860,21 @@ public class MainGUI extends javax.swing.JFrame
     }
   }
   
+  /**
+   * Stops reading tags in the background, by the worker which is still reading a list as well as by the TagHydrator.
+   */
+  private void stopTagReaders ()
+  {
+    if(readWorker != null && !readWorker.isDone())
+      readWorker.cancel(true); //Its TagReadPool is shut down when doInBackground() ends...
+    if(hydrator != null)
+    {
+      hydrator.stop();
+      hydrator.awaitStopped(1000); //Tags which are read right now are finished...
+      hydrator = null;
+    }
+  }
+  
   /**
    * Shuts down all GUI relevant parts of the programm with shutdown routines and calls the application shutdown
    * routine.
@@ -515,6 +916,9 @@ public class MainGUI extends javax.swing.JFrame
       SettingsProvider.getInstance().set("gui.maximized", this.getExtendedState());
     //</editor-fold>
     
+    discardJournal(); //The user didn't want to save the changes...
+    stopTagReaders(); //They must not put tags into the TagCache while it is written...
+    
     StatusBar statusBarInstance = (StatusBar) jTFstatus;
     statusBarInstance.shutdown();
     ArrayList<Exception> exceptions = statusBarInstance.getExceptions();
@@ -536,7 +940,7 @@ public class MainGUI extends javax.swing.JFrame
 
     jPanCenter = new javax.swing.JPanel();
     jScroll = new javax.swing.JScrollPane();
-    jList = new javax.swing.JList();
+    jList = new javax.swing.JList<>();
     jPanStatus = new javax.swing.JPanel();
     jPanStatusEast = new javax.swing.JPanel();
     jLabSongs = new javax.swing.JLabel();
@@ -1025,7 +1429,7 @@ public class MainGUI extends javax.swing.JFrame
   private javax.swing.JButton jButSave;
   private javax.swing.JButton jButStop;
   private javax.swing.JLabel jLabSongs;
-  private javax.swing.JList jList;
+  private javax.swing.JList<TrackFile> jList;
   private javax.swing.JMenuBar jMenuBar;
   private javax.swing.JMenu jMenuEdit;
   private javax.swing.JMenu jMenuFile;
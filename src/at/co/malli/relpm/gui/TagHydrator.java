@@ -0,0 +1,227 @@
+/*
+ * Created: 2026-10-17
+ *
+ * ====================================================================
+ *    The author of this file licenses it to you under the Apache
+ *    License, Version 2.0. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing,
+ *    software distributed under the License is distributed on an
+ *    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *    KIND, either express or implied.  See the License for the
+ *    specific language governing permissions and limitations
+ *    under the License.
+ * ====================================================================
+ */
+package at.co.malli.relpm.gui;
+
+import at.co.malli.relpm.data.audiofiles.TrackFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.JList;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Reads the deferred tags of an opened list in the background (see data.import.lazyTags). The rows shown in the
+ * viewport are read first, everything else in the order of the list afterwards. Read rows are repainted with a
+ * contentsChanged event whose source is this hydrator, so listeners can tell them apart from edits.
+ * @author Dietmar Malli
+ */
+public class TagHydrator implements ChangeListener
+{
+  private static final Logger logger = LogManager.getLogger(TagHydrator.class.getName());
+  
+  private final TrackFileListModel model;
+  private final JList<TrackFile> jList;
+  private final JViewport viewport;
+  private final TrackFile[] tracks;            //The list as it was opened. Later edits don't change the order...
+  private final AtomicInteger next = new AtomicInteger(0);
+  private final LinkedBlockingDeque<TrackFile> visible = new LinkedBlockingDeque<>(); //Read before the others...
+  private final ConcurrentLinkedQueue<TrackFile> hydrated = new ConcurrentLinkedQueue<>(); //Not repainted yet...
+  private final AtomicBoolean repaintQueued = new AtomicBoolean(false);
+  private final ExecutorService executor;
+  private final int threads;
+  private volatile boolean stopped = false;
+
+  /**
+   * Must be created on the EDT.
+   * @param model The model of the opened list.
+   * @param jList The JList displaying the model.
+   * @param viewport The viewport of the JScrollPane around jList.
+   * @param threads The number of tags which are read at the same time.
+   */
+  public TagHydrator (TrackFileListModel model, JList<TrackFile> jList, JViewport viewport, int threads)
+  {
+    this.model = model;
+    this.jList = jList;
+    this.viewport = viewport;
+    this.threads = Math.max(1, threads);
+    this.tracks = new TrackFile[model.getSize()];
+    for(int i = 0; i < tracks.length; i++)
+      tracks[i] = model.getElementAt(i);
+    final AtomicInteger threadNumber = new AtomicInteger(0);
+    this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory()
+    {
+      @Override
+      public Thread newThread (Runnable r)
+      {
+        Thread t = new Thread(r, "TagHydrator-" + threadNumber.incrementAndGet());
+        t.setDaemon(true); //Must never keep the application alive...
+        t.setPriority(Thread.MIN_PRIORITY); //The GUI stays responsive...
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Starts reading. Must be called on the EDT.
+   */
+  public void start ()
+  {
+    viewport.addChangeListener(this);
+    stateChanged(null); //The rows shown right now...
+    for(int i = 0; i < threads; i++)
+    {
+      executor.execute(new Runnable()
+      {
+        @Override
+        public void run ()
+        {
+          readTags();
+        }
+      });
+    }
+    executor.shutdown(); //The threads end once every track was taken...
+    logger.trace("Reading the tags of " + tracks.length + " tracks in the background");
+  }
+
+  /**
+   * Stops reading. Tags which are read right now are finished, but not repainted any more. Must be called on the EDT.
+   */
+  public void stop ()
+  {
+    stopped = true;
+    viewport.removeChangeListener(this);
+    visible.clear();
+  }
+
+  /**
+   * Waits until the reading threads finished the tags they were reading when stop() was called. Their results are
+   * put into the TagCache, which must not be written before.
+   * @param millis The longest time to wait in milliseconds.
+   */
+  public void awaitStopped (long millis)
+  {
+    try
+    {
+      executor.awaitTermination(millis, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Called by the viewport on the EDT if the list was scrolled or resized. The rows shown now replace the rows which
+   * were shown before at the front of the queue.
+   * @param e The event of the viewport.
+   */
+  @Override
+  public void stateChanged (ChangeEvent e)
+  {
+    int first = jList.getFirstVisibleIndex();
+    int last = jList.getLastVisibleIndex();
+    visible.clear();
+    if(first < 0 || stopped)
+      return;
+    for(int i = first; i <= last && i < model.getSize(); i++)
+    {
+      TrackFile track = model.getElementAt(i);
+      if(track.isTagsPending())
+        visible.offerLast(track);
+    }
+  }
+
+  /**
+   * The loop of every reading thread. The visible rows are taken first, the list is swept in order otherwise.
+   */
+  private void readTags ()
+  {
+    while(!stopped)
+    {
+      TrackFile track = visible.pollFirst();
+      if(track == null)
+      {
+        int index = next.getAndIncrement();
+        if(index >= tracks.length)
+          return;
+        track = tracks[index];
+      }
+      if(track.readPendingTags())
+      {
+        hydrated.add(track);
+        if(repaintQueued.compareAndSet(false, true)) //Only one repaint is waiting in the event queue...
+        {
+          SwingUtilities.invokeLater(new Runnable()
+          {
+            @Override
+            public void run ()
+            {
+              repaintHydrated();
+            }
+          });
+        }
+      }
+    }
+  }
+
+  /**
+   * Fires one contentsChanged event for every consecutive range of rows whose tags were read since the last call. The
+   * rows are looked up by identity, so edits in between don't matter. Runs on the EDT.
+   */
+  private void repaintHydrated ()
+  {
+    repaintQueued.set(false);
+    ArrayList<Integer> rows = new ArrayList<>();
+    TrackFile track = hydrated.poll();
+    while(track != null)
+    {
+      int index = model.indexOf(track);
+      if(index >= 0) //Removed meanwhile...
+        rows.add(index);
+      track = hydrated.poll();
+    }
+    if(stopped || rows.isEmpty())
+      return;
+    int[] sorted = new int[rows.size()];
+    for(int i = 0; i < sorted.length; i++)
+      sorted[i] = rows.get(i);
+    Arrays.sort(sorted);
+    int from = 0;
+    for(int i = 1; i <= sorted.length; i++)
+    {
+      if(i == sorted.length || sorted[i] != sorted[i - 1] + 1)
+      {
+        model.tagsRead(this, sorted[from], sorted[i - 1]);
+        from = i;
+      }
+    }
+  }
+}
@@ -19,6 +19,8 @@ package at.co.malli.relpm.gui;
 
 import at.co.malli.relpm.data.audiofiles.TrackFile;
 import at.co.malli.relpm.data.audiofiles.TrackFileList;
+import at.co.malli.relpm.data.playlist.EditJournal;
+import at.co.malli.relpm.data.playlist.PlaylistFileReadWorker;
 import java.io.File;
 import java.util.ArrayList;
 import javax.swing.AbstractListModel;
@@ -29,6 +31,7 @@ import javax.swing.AbstractListModel;
 public class TrackFileListModel extends AbstractListModel<TrackFile>
 {
   private TrackFileList list;
+  private EditJournal journal = null;
 
   /**
    * A reference to the list which should be used in other methods.
@@ -69,9 +72,55 @@ public class TrackFileListModel extends AbstractListModel<TrackFile>
   public TrackFile remove (int val)
   {
     TrackFile removed = list.remove(val);
+    if(journal != null)
+      journal.recordRemove(val, 1);
     fireIntervalRemoved(this, val, val);
     return removed;
   }
+  /**
+   * Removes several TrackFiles in a single pass. Listeners get one event per consecutive run of removed files, from
+   * the back, so the indices of each event are valid after the events before it. A single event for a selection with
+   * gaps would make the selection model shift the wrong rows.
+   * @param selection The indices of the files to remove in ascending order, as returned by JList.getSelectedIndices().
+   * @return The removed files in their old order.
+   */
+  public ArrayList<TrackFile> removeIndices (int[] selection)
+  {
+    ArrayList<TrackFile> removed = list.removeIndices(selection);
+    if(removed.isEmpty())
+      return removed;
+    int end = selection.length;
+    for(int i = selection.length - 1; i >= 0; i--) //One record and event per consecutive run, from the back...
+    {
+      if(i == 0 || selection[i - 1] != selection[i] - 1)
+      {
+        if(journal != null)
+          journal.recordRemove(selection[i], end - i);
+        fireIntervalRemoved(this, selection[i], selection[end - 1]);
+        end = i;
+      }
+    }
+    return removed;
+  }
+  /**
+   * Moves the selected TrackFiles in front of the first unselected file at or after target. The list is compacted in
+   * one pass and a single contentsChanged event covers every row which got another file.
+   * @param selection The indices of the files to move in ascending order, as returned by JList.getSelectedIndices().
+   * @param target The drop position counted in the list before the move. getSize() moves the files to the end.
+   * @return The new index of the first moved file.
+   */
+  public int moveIndices (int[] selection, int target)
+  {
+    int first = list.move(selection, target);
+    if(selection.length == 0)
+      return first;
+    if(journal != null)
+      journal.recordMove(selection, target);
+    int from = Math.min(selection[0], first);
+    int to = Math.max(selection[selection.length - 1], first + selection.length - 1);
+    fireContentsChanged(this, from, to);
+    return first;
+  }
   /**
    * Inserts elements from an ArrayList at the given position. elements.get(0) will be at this position once this method
    * is done.
@@ -81,10 +130,38 @@ public class TrackFileListModel extends AbstractListModel<TrackFile>
   public void add (int index, ArrayList<TrackFile> elements)
   {
     int size = elements.size();
+    if(journal != null)
+      journal.recordAdd(index, elements); //Before they are taken out of elements...
     list.add(index, elements);
     fireIntervalAdded(this, index,index+size-1);
   }
 
+  /**
+   * Repaints rows whose tags were read in the background. The event has the reader as its source, so listeners can
+   * tell it apart from an edit of the list.
+   * @param source The TagHydrator or PlaylistFileReadWorker which read the tags.
+   * @param index0 The first row which got its tags.
+   * @param index1 The last row which got its tags.
+   */
+  public void tagsRead (Object source, int index0, int index1)
+  {
+    fireContentsChanged(source, index0, index1);
+  }
+
+  /**
+   * Appends tracks which were just read from the playlist of the list. This is not an edit, so it isn't journaled and
+   * the event has the worker as its source.
+   * @param source The worker which is reading the list.
+   * @param tracks The next parsed tracks. The ArrayList is empty afterwards.
+   */
+  public void addRead (PlaylistFileReadWorker source, ArrayList<TrackFile> tracks)
+  {
+    int index = list.getSize();
+    int size = tracks.size();
+    list.add(index, tracks);
+    fireIntervalAdded(source, index, index + size - 1);
+  }
+
   /**
    * @param list The list which should be modified/displayed by the GUI.
    */
@@ -110,6 +187,20 @@ public class TrackFileListModel extends AbstractListModel<TrackFile>
   {
     return list.getPlaylist();
   }
+  /**
+   * @param journal The journal every following edit is recorded in or null to stop recording.
+   */
+  public void setJournal (EditJournal journal)
+  {
+    this.journal = journal;
+  }
+  /**
+   * @return The journal edits are recorded in or null.
+   */
+  public EditJournal getJournal ()
+  {
+    return journal;
+  }
   /**
    * @return The TrackFileList referenced in this object.
    */